@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.Instant;
+import org.powertac.common.Broker;
+import org.powertac.common.Competition;
+import org.powertac.common.Rate;
+import org.powertac.common.Tariff;
+import org.powertac.common.TariffSpecification;
+import org.powertac.common.TimeService;
+import org.powertac.common.WeatherReport;
+import org.powertac.common.enumerations.PowerType;
+import org.powertac.common.repo.CustomerRepo;
+import org.powertac.common.repo.TariffRepo;
+import org.powertac.common.repo.TariffSubscriptionRepo;
+import org.powertac.common.repo.TimeslotRepo;
+import org.powertac.common.repo.WeatherForecastRepo;
+import org.powertac.common.repo.WeatherReportRepo;
+import org.powertac.producer.ProducerService.LoadTiming;
+import org.powertac.producer.bench.BenchmarkContext;
+import org.powertac.producer.bench.LocalTariffMarket;
+import org.springframework.context.support.GenericApplicationContext;
+
+/**
+ * Replays the producer workload of a whole game without the server: the
+ * {@link ProducerService} is initialized, the producers subscribe to the
+ * default tariff, then the service is activated at every timeslot and new
+ * tariffs are published periodically. The repositories are local and the
+ * tariff market applies the subscriptions immediately. The driver prints the
+ * wall time and the allocated bytes of every phase, the throughput in
+ * timeslots per second and the metrics of every producer type.
+ * 
+ * Usage: GameDriver [timeslots] [tariff-period] [tariffs-per-round]
+ * [config-folder]
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class GameDriver
+{
+  static final int DEFAULT_TIMESLOTS = 1440;
+  static final int DEFAULT_TARIFF_PERIOD = 24;
+  static final int DEFAULT_TARIFFS_PER_ROUND = 2;
+
+  private static final double NANOS_IN_MILLI = 1000000.0;
+  private static final double NANOS_IN_SECOND = 1000000000.0;
+  private static final double BYTES_IN_MEGABYTE = 1024 * 1024;
+
+  // The phase the service is registered for at the server configuration
+  private static final int TIMESLOT_PHASE = 2;
+
+  // The number of different tariffs the brokers offer in turns
+  private static final int TARIFF_KINDS = 10;
+
+  private TimeService timeService;
+  private TimeslotRepo timeslotRepo;
+  private WeatherReportRepo weatherReportRepo;
+  private WeatherForecastRepo weatherForecastRepo;
+  private TariffRepo tariffRepo;
+  private LocalTariffMarket market;
+  private ProducerService service;
+
+  private List<Phase> phases = new ArrayList<Phase>();
+
+  /**
+   * Creates a new game on the benchmark context.
+   * 
+   * @param producerFileFolder
+   *          the folder of the producer files or null for the default
+   *          producers
+   */
+  public GameDriver (String producerFileFolder)
+  {
+    GenericApplicationContext context = BenchmarkContext.init();
+    timeService = context.getBean(TimeService.class);
+    timeslotRepo = context.getBean(TimeslotRepo.class);
+    weatherReportRepo = context.getBean(WeatherReportRepo.class);
+    weatherForecastRepo = context.getBean(WeatherForecastRepo.class);
+    tariffRepo = context.getBean(TariffRepo.class);
+    market = context.getBean(LocalTariffMarket.class);
+
+    context.getBean(CustomerRepo.class).recycle();
+    context.getBean(TariffSubscriptionRepo.class).recycle();
+    tariffRepo.recycle();
+    weatherReportRepo.recycle();
+    weatherReportRepo.runOnce();
+    weatherForecastRepo.recycle();
+    weatherForecastRepo.runOnce();
+    timeslotRepo.recycle();
+    market.clearListeners();
+
+    service = new ProducerService();
+    context.getAutowireCapableBeanFactory().autowireBean(service);
+    service.setProducerFileFolder(producerFileFolder);
+    service.setMetricsEnabled(true);
+    service.setMetricsLogPeriod(0);
+    service.setPrecomputeProfiles(Boolean.getBoolean("producer.precompute"));
+  }
+
+  /**
+   * Plays the game.
+   * 
+   * @param timeslots
+   *          the number of timeslots to activate the service
+   * @param tariffPeriod
+   *          new tariffs are published every that many timeslots
+   * @param tariffsPerRound
+   *          the number of new tariffs of every publication
+   */
+  public void run (int timeslots, int tariffPeriod, int tariffsPerRound)
+  {
+    if (timeslots <= 0 || tariffPeriod <= 0 || tariffsPerRound < 0)
+      throw new IllegalArgumentException("Invalid game parameters");
+
+    Competition competition = Competition.currentCompetition();
+    Instant start = competition.getSimulationBaseTime();
+    long timeslotMillis =
+      competition.getTimeslotLength() * TimeService.MINUTE;
+    timeService.setCurrentTime(start);
+    addWeather();
+
+    tariffRepo.setDefaultTariff(new TariffSpecification(new Broker("default"),
+                                                        PowerType.PRODUCTION)
+            .addRate(new Rate().withValue(0.5)));
+    List<Broker> brokers = new ArrayList<Broker>();
+    for (int i = 0; i < tariffsPerRound; i++)
+      brokers.add(new Broker("broker " + i));
+
+    Phase initialize = phase("initialize");
+    initialize.begin();
+    service.initialize(competition, Arrays.asList("DefaultBroker"));
+    initialize.end();
+    addLoadTimings();
+
+    Phase activate = phase("activate");
+    Phase publish = phase("publishNewTariffs");
+    int round = 0;
+    for (int t = 1; t <= timeslots; t++) {
+      timeService.setCurrentTime(start.plus(t * timeslotMillis));
+      addWeather();
+
+      activate.begin();
+      service.activate(timeService.getCurrentTime(), TIMESLOT_PHASE);
+      activate.end();
+
+      if (t % tariffPeriod == 0 && tariffsPerRound > 0) {
+        List<Tariff> tariffs = new ArrayList<Tariff>();
+        for (int i = 0; i < tariffsPerRound; i++) {
+          Tariff tariff =
+            TariffEvaluationBenchmark.tariff(brokers.get(i), (round + i)
+                                                             % TARIFF_KINDS);
+          tariffRepo.addTariff(tariff);
+          tariffs.add(tariff);
+        }
+        round++;
+
+        publish.begin();
+        market.publishTariffs(tariffs);
+        publish.end();
+      }
+    }
+  }
+
+  /**
+   * Adds the synthetic weather report and forecast of the current timeslot.
+   */
+  private void addWeather ()
+  {
+    int timeslot = timeslotRepo.currentSerialNumber();
+    double phase =
+      2 * Math.PI * timeslot / TariffEvaluationBenchmark.FORECAST_HOURS;
+    weatherReportRepo.add(new WeatherReport(timeslot, 15 - 8 * Math.cos(phase),
+                                            8 + 6 * Math.sin(phase),
+                                            (15 * timeslot) % 360,
+                                            (timeslot % 6) / 10.0));
+    weatherForecastRepo.add(TariffEvaluationBenchmark.forecast(timeslot));
+  }
+
+  /**
+   * Splits the initialization to the loading of the files and the default
+   * subscriptions. These are measured by the service and have no allocation
+   * figures.
+   */
+  private void addLoadTimings ()
+  {
+    Phase load = phase("  load producers");
+    Phase subscribe = phase("  subscribeDefault");
+    for (LoadTiming timing: service.getLoadTimings().values()) {
+      load.add(timing.parseNanos + timing.resolveNanos);
+      subscribe.add(timing.subscribeNanos);
+    }
+    load.bytes = -1;
+    subscribe.bytes = -1;
+  }
+
+  private Phase phase (String name)
+  {
+    Phase phase = new Phase(name);
+    phases.add(phase);
+    return phase;
+  }
+
+  /**
+   * Prints the measurements of the phases and the throughput.
+   */
+  public void report ()
+  {
+    System.out.println(String.format("%-20s %8s %12s %12s %12s", "phase",
+                                     "calls", "wall ms", "ms/call",
+                                     "alloc MB"));
+    long gameNanos = 0;
+    int timeslots = 0;
+    for (Phase phase: phases) {
+      System.out.println(phase);
+      if (phase.name.equals("activate")) {
+        timeslots = phase.calls;
+        gameNanos += phase.nanos;
+      }
+      else if (phase.name.equals("publishNewTariffs")) {
+        gameNanos += phase.nanos;
+      }
+    }
+    if (gameNanos > 0)
+      System.out.println(String.format("%d timeslots, %.1f timeslots/s",
+                                       timeslots, timeslots * NANOS_IN_SECOND
+                                                  / gameNanos));
+    for (Map.Entry<String, ProducerMetrics> entry: service.getMetricsByType()
+            .entrySet())
+      System.out.println(entry.getKey() + ": " + entry.getValue());
+  }
+
+  public static void main (String[] args)
+  {
+    int timeslots =
+      args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TIMESLOTS;
+    int tariffPeriod =
+      args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_TARIFF_PERIOD;
+    int tariffsPerRound =
+      args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TARIFFS_PER_ROUND;
+    String folder = args.length > 3 ? args[3] : null;
+
+    GameDriver driver = new GameDriver(folder);
+    driver.run(timeslots, tariffPeriod, tariffsPerRound);
+    driver.report();
+  }
+
+  /**
+   * The bytes allocated so far by the live threads, or -1 if the jvm doesn't
+   * count them. The allocations of threads that have finished are lost.
+   */
+  static long allocatedBytes ()
+  {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    com.sun.management.ThreadMXBean counter =
+      (com.sun.management.ThreadMXBean) threads;
+    if (!counter.isThreadAllocatedMemorySupported()
+        || !counter.isThreadAllocatedMemoryEnabled())
+      return -1;
+    long total = 0;
+    for (long bytes: counter.getThreadAllocatedBytes(threads
+            .getAllThreadIds())) {
+      if (bytes > 0)
+        total += bytes;
+    }
+    return total;
+  }
+
+  /**
+   * The accumulated measurements of one phase of the game
+   */
+  static class Phase
+  {
+    String name;
+    int calls = 0;
+    long nanos = 0;
+    long bytes = 0;
+
+    private long startNanos;
+    private long startBytes;
+
+    Phase (String name)
+    {
+      this.name = name;
+    }
+
+    void begin ()
+    {
+      startBytes = allocatedBytes();
+      startNanos = System.nanoTime();
+    }
+
+    void end ()
+    {
+      add(System.nanoTime() - startNanos);
+      long endBytes = allocatedBytes();
+      if (bytes >= 0 && startBytes >= 0 && endBytes >= 0)
+        bytes += endBytes - startBytes;
+      else
+        bytes = -1;
+    }
+
+    void add (long elapsedNanos)
+    {
+      calls++;
+      nanos += elapsedNanos;
+    }
+
+    @Override
+    public String toString ()
+    {
+      String allocated =
+        bytes < 0 ? "-" : String.format("%.1f", bytes / BYTES_IN_MEGABYTE);
+      double perCall = calls == 0 ? 0 : nanos / NANOS_IN_MILLI / calls;
+      return String.format("%-20s %8d %12.1f %12.3f %12s", name, calls,
+                           nanos / NANOS_IN_MILLI, perCall, allocated);
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.powertac.common.Broker;
+import org.powertac.common.Competition;
+import org.powertac.common.Rate;
+import org.powertac.common.Tariff;
+import org.powertac.common.TariffSpecification;
+import org.powertac.common.TimeService;
+import org.powertac.common.WeatherForecast;
+import org.powertac.common.WeatherForecastPrediction;
+import org.powertac.common.enumerations.PowerType;
+import org.powertac.common.repo.CustomerRepo;
+import org.powertac.common.repo.TariffRepo;
+import org.powertac.common.repo.TariffSubscriptionRepo;
+import org.powertac.common.repo.TimeslotRepo;
+import org.powertac.common.repo.WeatherForecastRepo;
+import org.powertac.producer.bench.BenchmarkContext;
+import org.powertac.producer.bench.LocalTariffMarket;
+import org.springframework.context.support.GenericApplicationContext;
+
+/**
+ * Measures a full tariff publication round of the {@link ProducerService}:
+ * every producer evaluates the new tariffs with its {@link
+ * org.powertac.common.TariffEvaluator}, which generates the output profiles
+ * of the producer under each tariff. The producers are loaded from the
+ * shipped configuration files, {@code producersPerType} of each file, and
+ * {@code tariffs} new production tariffs of different brokers are published
+ * at every round. The sample time mode reports the percentiles of the round
+ * latency. A round takes seconds since the profiles of the solar farm are
+ * expensive, so the iterations are long and few.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TariffEvaluationBenchmark
+{
+  static final String[] PRODUCER_FILES = { "/conf/dam.xml",
+                                          "/conf/runoftheriver.xml",
+                                          "/conf/solar-farm.xml",
+                                          "/conf/steam-plant.xml",
+                                          "/conf/wind-farm.xml" };
+
+  // The number of hours of the synthetic forecast
+  static final int FORECAST_HOURS = 24;
+
+  @Param({ "1", "2", "4" })
+  int producersPerType;
+
+  @Param({ "1", "4", "8" })
+  int tariffs;
+
+  TariffRepo tariffRepo;
+  TariffSubscriptionRepo tariffSubscriptionRepo;
+  LocalTariffMarket market;
+
+  List<Producer> producers;
+  List<Broker> brokers;
+  List<Tariff> newTariffs;
+  Broker defaultBroker;
+
+  @Setup
+  public void setUp ()
+  {
+    GenericApplicationContext context = BenchmarkContext.init();
+    tariffRepo = context.getBean(TariffRepo.class);
+    tariffSubscriptionRepo = context.getBean(TariffSubscriptionRepo.class);
+    market = context.getBean(LocalTariffMarket.class);
+    context.getBean(CustomerRepo.class).recycle();
+    startGame(context);
+
+    producers = loadProducers(producersPerType);
+
+    ProducerService service = new ProducerService();
+    service.setProducerList(producers);
+    market.clearListeners();
+    market.registerNewTariffListener(service);
+
+    defaultBroker = new Broker("default broker");
+    brokers = new ArrayList<Broker>();
+    for (int i = 0; i < tariffs; i++)
+      brokers.add(new Broker("broker " + i));
+  }
+
+  /**
+   * Sets the time to the start of the current competition and adds a
+   * synthetic forecast for the current timeslot.
+   * 
+   * @param context
+   *          the benchmark context
+   */
+  static void startGame (GenericApplicationContext context)
+  {
+    TimeService timeService = context.getBean(TimeService.class);
+    timeService.setCurrentTime(Competition.currentCompetition()
+            .getSimulationBaseTime());
+    TimeslotRepo timeslotRepo = context.getBean(TimeslotRepo.class);
+    timeslotRepo.recycle();
+
+    WeatherForecastRepo weatherForecastRepo =
+      context.getBean(WeatherForecastRepo.class);
+    weatherForecastRepo.recycle();
+    weatherForecastRepo.runOnce();
+    weatherForecastRepo.add(forecast(timeslotRepo.currentSerialNumber()));
+  }
+
+  /**
+   * Creates a forecast of a sunny day with varying wind.
+   * 
+   * @param timeslot
+   *          the timeslot of the forecast
+   * @return the forecast
+   */
+  static WeatherForecast forecast (int timeslot)
+  {
+    List<WeatherForecastPrediction> predictions =
+      new ArrayList<WeatherForecastPrediction>();
+    for (int i = 1; i <= FORECAST_HOURS; i++) {
+      double phase = 2 * Math.PI * i / FORECAST_HOURS;
+      predictions.add(new WeatherForecastPrediction(i, 15 - 8 * Math.cos(phase),
+                                                    8 + 6 * Math.sin(phase),
+                                                    (15 * i) % 360,
+                                                    (i % 6) / 10.0));
+    }
+    return new WeatherForecast(timeslot, predictions);
+  }
+
+  /**
+   * Loads the shipped producers.
+   * 
+   * @param copies
+   *          the number of producers of each configuration file
+   * @return the producers
+   */
+  static List<Producer> loadProducers (int copies)
+  {
+    List<Producer> result = new ArrayList<Producer>();
+    for (String file: PRODUCER_FILES) {
+      for (int i = 0; i < copies; i++)
+        result.add((Producer) ProducerService.getXStream()
+                .fromXML(ProducerService.class.getResource(file)));
+    }
+    return result;
+  }
+
+  /**
+   * Creates a production tariff. Every other tariff has a day and a night
+   * rate.
+   * 
+   * @param broker
+   *          the broker of the tariff
+   * @param index
+   *          the index of the tariff
+   * @return the offered tariff
+   */
+  static Tariff tariff (Broker broker, int index)
+  {
+    double value = 0.4 + 0.02 * index;
+    TariffSpecification spec =
+      new TariffSpecification(broker, PowerType.PRODUCTION);
+    if (index % 2 == 0) {
+      spec.addRate(new Rate().withValue(value));
+    }
+    else {
+      spec.addRate(new Rate().withDailyBegin(7).withDailyEnd(18)
+              .withValue(value * 1.2));
+      spec.addRate(new Rate().withDailyBegin(19).withDailyEnd(6)
+              .withValue(value * 0.8));
+    }
+    Tariff tariff = new Tariff(spec);
+    tariff.init();
+    tariff.setState(Tariff.State.OFFERED);
+    return tariff;
+  }
+
+  /**
+   * Every round starts with the producers on a new default tariff and new
+   * tariffs, so that the evaluators can't reuse the costs they have computed
+   * at the previous rounds.
+   */
+  @Setup(Level.Invocation)
+  public void newRound ()
+  {
+    tariffRepo.recycle();
+    tariffSubscriptionRepo.recycle();
+    tariffRepo.setDefaultTariff(new TariffSpecification(defaultBroker,
+                                                        PowerType.PRODUCTION)
+            .addRate(new Rate().withValue(0.5)));
+
+    newTariffs = new ArrayList<Tariff>();
+    for (int i = 0; i < tariffs; i++) {
+      Tariff tariff = tariff(brokers.get(i), i);
+      tariffRepo.addTariff(tariff);
+      newTariffs.add(tariff);
+    }
+
+    for (Producer producer: producers)
+      producer.subscribeDefault();
+  }
+
+  @Benchmark
+  public List<Tariff> publishNewTariffs ()
+  {
+    market.publishTariffs(newTariffs);
+    return newTariffs;
+  }
+}
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.powertac.common.Competition;
+import org.powertac.common.TimeService;
+import org.powertac.common.interfaces.Accounting;
+import org.powertac.common.interfaces.CompetitionControl;
+import org.powertac.common.interfaces.ServerConfiguration;
+import org.powertac.common.repo.BrokerRepo;
+import org.powertac.common.repo.CustomerRepo;
+import org.powertac.common.repo.RandomSeedRepo;
+import org.powertac.common.repo.TariffRepo;
+import org.powertac.common.repo.TariffSubscriptionRepo;
+import org.powertac.common.repo.TimeslotRepo;
+import org.powertac.common.repo.WeatherForecastRepo;
+import org.powertac.common.repo.WeatherReportRepo;
+import org.powertac.common.spring.SpringApplicationContext;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+
+/**
+ * The producers look up their repositories through the
+ * {@link SpringApplicationContext}. This class registers plain instances of
+ * the repositories, a {@link LocalTariffMarket} and no-op stubs of the other
+ * server services so that producers can be created by the benchmarks without
+ * the server, the xml configuration or the spring test runner.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class BenchmarkContext
+{
+  private static GenericApplicationContext context = null;
+
+  private BenchmarkContext ()
+  {
+  }
+
+  /**
+   * Creates the context once and starts a new competition.
+   * 
+   * @return the context with the repositories
+   */
+  public static synchronized GenericApplicationContext init ()
+  {
+    Competition.newInstance("benchmark");
+    if (context != null)
+      return context;
+
+    GenericApplicationContext ctx = new GenericApplicationContext();
+    AnnotationConfigUtils.registerAnnotationConfigProcessors(ctx);
+    register(ctx, "timeService", TimeService.class);
+    register(ctx, "timeslotRepo", TimeslotRepo.class);
+    register(ctx, "weatherReportRepo", WeatherReportRepo.class);
+    register(ctx, "weatherForecastRepo", WeatherForecastRepo.class);
+    register(ctx, "brokerRepo", BrokerRepo.class);
+    register(ctx, "customerRepo", CustomerRepo.class);
+    register(ctx, "randomSeedRepo", RandomSeedRepo.class);
+    register(ctx, "tariffRepo", TariffRepo.class);
+    register(ctx, "tariffSubscriptionRepo", TariffSubscriptionRepo.class);
+    register(ctx, "tariffMarketService", LocalTariffMarket.class);
+    ctx.getBeanFactory().registerSingleton("accountingService",
+                                           stub(Accounting.class));
+    ctx.getBeanFactory().registerSingleton("serverPropertiesService",
+                                           stub(ServerConfiguration.class));
+    ctx.getBeanFactory().registerSingleton("competitionControl",
+                                           stub(CompetitionControl.class));
+    ctx.refresh();
+
+    new SpringApplicationContext().setApplicationContext(ctx);
+    context = ctx;
+    return context;
+  }
+
+  private static void register (GenericApplicationContext ctx, String name,
+                                Class<?> type)
+  {
+    ctx.registerBeanDefinition(name, new RootBeanDefinition(type));
+  }
+
+  /**
+   * Creates an implementation of the interface that does nothing and returns
+   * null, false or zero.
+   * 
+   * @param type
+   *          the interface
+   * @return the stub
+   */
+  public static <T> T stub (final Class<T> type)
+  {
+    Object proxy =
+      Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                             new InvocationHandler() {
+                               @Override
+                               public Object invoke (Object self,
+                                                     Method method,
+                                                     Object[] args)
+                               {
+                                 if (method.getName().equals("equals"))
+                                   return self == args[0];
+                                 if (method.getName().equals("hashCode"))
+                                   return System.identityHashCode(self);
+                                 if (method.getName().equals("toString"))
+                                   return "Stub " + type.getSimpleName();
+                                 return defaultValue(method.getReturnType());
+                               }
+                             });
+    return type.cast(proxy);
+  }
+
+  private static Object defaultValue (Class<?> type)
+  {
+    if (!type.isPrimitive() || type == void.class)
+      return null;
+    if (type == boolean.class)
+      return false;
+    if (type == char.class)
+      return '\0';
+    if (type == double.class)
+      return 0.0;
+    if (type == float.class)
+      return 0.0f;
+    if (type == long.class)
+      return 0L;
+    if (type == byte.class)
+      return (byte) 0;
+    if (type == short.class)
+      return (short) 0;
+    return 0;
+  }
+}
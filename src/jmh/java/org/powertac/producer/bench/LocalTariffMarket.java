@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.powertac.common.CustomerInfo;
+import org.powertac.common.Tariff;
+import org.powertac.common.TariffSpecification;
+import org.powertac.common.TariffSubscription;
+import org.powertac.common.enumerations.PowerType;
+import org.powertac.common.interfaces.NewTariffListener;
+import org.powertac.common.interfaces.TariffMarket;
+import org.powertac.common.repo.TariffRepo;
+import org.powertac.common.repo.TariffSubscriptionRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * A tariff market that works directly on the local repositories. Unlike the
+ * server's market the subscriptions are applied immediately, which is what
+ * the producers expect when they subscribe to the default tariff.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class LocalTariffMarket implements TariffMarket
+{
+  @Autowired
+  private TariffRepo tariffRepo;
+
+  @Autowired
+  private TariffSubscriptionRepo tariffSubscriptionRepo;
+
+  private List<NewTariffListener> listeners =
+    new ArrayList<NewTariffListener>();
+
+  @Override
+  public void subscribeToTariff (Tariff tariff, CustomerInfo customer,
+                                 int customerCount)
+  {
+    TariffSubscription subscription =
+      tariffSubscriptionRepo.getSubscription(customer, tariff);
+    if (customerCount > 0)
+      subscription.subscribe(customerCount);
+    else if (customerCount < 0)
+      subscription.deferredUnsubscribe(-customerCount);
+  }
+
+  @Override
+  public List<Tariff> getActiveTariffList (PowerType type)
+  {
+    return tariffRepo.findActiveTariffs(type);
+  }
+
+  @Override
+  public Tariff getDefaultTariff (PowerType type)
+  {
+    return tariffRepo.getDefaultTariff(type);
+  }
+
+  @Override
+  public boolean setDefaultTariff (TariffSpecification newSpec)
+  {
+    tariffRepo.setDefaultTariff(newSpec);
+    return true;
+  }
+
+  @Override
+  public void registerNewTariffListener (NewTariffListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void processRevokedTariffs ()
+  {
+    // Nothing is revoked in the benchmarks
+  }
+
+  /**
+   * Sends the tariffs to the registered listeners.
+   * 
+   * @param tariffs
+   *          the new tariffs
+   */
+  public void publishTariffs (List<Tariff> tariffs)
+  {
+    for (NewTariffListener listener: listeners)
+      listener.publishNewTariffs(tariffs);
+  }
+
+  /**
+   * Forgets the registered listeners.
+   */
+  public void clearListeners ()
+  {
+    listeners.clear();
+  }
+}
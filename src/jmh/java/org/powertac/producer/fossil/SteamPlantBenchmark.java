@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.fossil;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.powertac.producer.bench.BenchmarkContext;
+
+/**
+ * Measures the output of a steam plant for one timeslot. The preferred output
+ * alternates so that the plant is ramping in every call.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SteamPlantBenchmark
+{
+  // The preferred output as part of the capacity
+  @Param({ "0.0", "0.5", "1.0" })
+  double load;
+
+  SteamPlant plant;
+  double capacity = -500000;
+  boolean high;
+
+  @Setup
+  public void setUp ()
+  {
+    BenchmarkContext.init();
+    plant = new SteamPlant(10000, 2000, capacity);
+  }
+
+  @Benchmark
+  public double getOutput ()
+  {
+    high = !high;
+    plant.setPreferredOutput(high ? capacity : load * capacity);
+    return plant.getOutput();
+  }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.hydro;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.powertac.producer.bench.BenchmarkContext;
+import org.powertac.producer.utils.Curve;
+
+/**
+ * Measures the output of the dam and the run of the river plant for one
+ * timeslot. Every call moves one day forward.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HydroBaseBenchmark
+{
+  private static final int DAYS_IN_YEAR = 365;
+
+  @Param({ "dam", "river" })
+  String plant;
+
+  HydroBase hydro;
+  int day;
+
+  @Setup
+  public void setUp ()
+  {
+    BenchmarkContext.init();
+
+    Curve efficiency = new Curve();
+    efficiency.add(0, 0.5);
+    efficiency.add(0.5, 1);
+    efficiency.add(1, 0.5);
+
+    Curve flow = new Curve();
+    flow.add(1, 9);
+    flow.add(182, 9);
+    flow.add(365, 9);
+
+    Curve volume = new Curve();
+    volume.add(0, 0);
+    volume.add(1000000, 16.5);
+    volume.add(3000000, 28);
+    volume.add(4000000, 31);
+    volume.add(6000000, 36);
+    volume.add(8000000, 39.5);
+
+    if (plant.equals("dam")) {
+      hydro = new Dam(flow, 1, 9, efficiency, volume, 6000000, -3500, 1);
+      // keep the reservoir level steady
+      hydro.setPreferredOutput(-9 * 999.972 * 9.80665 * 36 / 2000);
+    }
+    else {
+      hydro = new RunOfRiver(flow, 2, 12, efficiency, 0, 50, 1, -100);
+      hydro.setPreferredOutput(-100);
+    }
+    day = 0;
+  }
+
+  @Benchmark
+  public double getOutput ()
+  {
+    day = day % DAYS_IN_YEAR + 1;
+    return hydro.getOutput(day);
+  }
+}
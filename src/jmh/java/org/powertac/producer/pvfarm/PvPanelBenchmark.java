@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.pvfarm;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the output of one panel for one timeslot. Every call moves one
+ * hour forward so that the whole day and year are covered.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PvPanelBenchmark
+{
+  private static final long HOUR = 3600 * 1000;
+  private static final long YEAR = 365 * 24 * HOUR;
+
+  @Param({ "0.0", "0.5", "1.0" })
+  double cloudCover;
+
+  @Param({ "60", "15" })
+  int timeslotLength;
+
+  PvPanel panel;
+  TimeZone timezone;
+  long time;
+
+  @Setup
+  public void setUp ()
+  {
+    panel = new PvPanel(1.407, 41.88, -87.6278, 180, 30, 0.15, -200);
+    panel.setTimeslotLengthInMin(timeslotLength);
+    timezone = TimeZone.getTimeZone("CST");
+    time = 0;
+  }
+
+  @Benchmark
+  public double getOutput ()
+  {
+    time = (time + HOUR) % YEAR;
+    return panel.getOutput(time, timezone, cloudCover, 20, 5);
+  }
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the interpolation of a curve inside and outside its points.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CurveBenchmark
+{
+  private static final int SAMPLES = 1024;
+
+  @Param({ "5", "25", "100" })
+  int points;
+
+  Curve curve;
+  double[] xs = new double[SAMPLES];
+  int next;
+
+  @Setup
+  public void setUp ()
+  {
+    curve = new Curve();
+    for (int i = 0; i < points; i++)
+      curve.add(i, Math.sin(i));
+    // a tenth of the samples falls outside the curve
+    for (int i = 0; i < SAMPLES; i++)
+      xs[i] = (i * 1.1 * points) / SAMPLES - 0.05 * points;
+    curve.value(0);
+  }
+
+  @Benchmark
+  public double value ()
+  {
+    next = (next + 1) % SAMPLES;
+    return curve.value(xs[next]);
+  }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.windfarm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.powertac.common.repo.RandomSeedRepo;
+import org.powertac.producer.utils.Curve;
+
+/**
+ * Measures the output of one turbine for one timeslot.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WindTurbineBenchmark
+{
+  @Param({ "4.0", "10.0", "20.0" })
+  double windSpeed;
+
+  @Param({ "60", "15" })
+  int timeslotLength;
+
+  WindTurbine turbine;
+
+  @Setup
+  public void setUp ()
+  {
+    double[] x =
+      { 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21,
+       22, 23, 24, 25 };
+    double[] y =
+      { 0, -66, -166, -288, -473, -709, -1000, -1316, -1651, -1860, -1968,
+       -2000, -2000, -2000, -2000, -2000, -2000, -2000, -2000, -2000, -2000,
+       -2000, -2000 };
+    Curve c = new Curve(x, y);
+    c.setCustomLastValue(0);
+    turbine = new WindTurbine(22, 0.01, -2000, 80, c);
+    turbine.setRs(new RandomSeedRepo().getRandomSeed("WindTurbineBenchmark",
+                                                      0, "Misc"));
+    turbine.setTimeslotLengthInMin(timeslotLength);
+  }
+
+  @Benchmark
+  public double getPowerOutput ()
+  {
+    return turbine.getPowerOutput(298.15, windSpeed);
+  }
+}
@@ -16,6 +16,12 @@
 package org.powertac.algorithm;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import static java.lang.Math.*;
 
@@ -23,12 +29,13 @@ import static java.lang.Math.*;
  * This class implements the the ant colony optimization method on the subset
  * selection problem. The algorithm is a combination of the MIN-MAX and the
  * original ant system algorithms. The algorithm in using generics to not tie
- * it to one type of producer.
+ * it to one type of producer. With a {@link PheromoneMemory} the runs start
+ * from the pheromones and the best solution of the previous one.
  * 
  * @author Spyros Papageorgiou
  * 
  */
-public final class AntColonyOptimizationSS<E>
+public final class AntColonyOptimizationSS<E> implements SubsetSelection<E>
 {
   // The maximum number of iterations that that algorithm will perform
   private int maxIterations = 20;
@@ -59,6 +66,31 @@ public final class AntColonyOptimizationSS<E>
   // The random seed generator
   private Random rng = new Random();
 
+  // The seed of the random streams of the ants, null to use rng
+  private Long seed = null;
+  // The number of threads that construct the ants
+  private int threads = 1;
+  // Creates the constraints of every thread when there are many
+  private ConstraintsFactory<E> constraintsFactory = null;
+  // The pool that constructs the ants, kept between the runs
+  private ExecutorService executor = null;
+  // Whether the pool was created by the solver and is shut down by it
+  private boolean ownsExecutor = false;
+
+  // The wall clock time a run may take in nanoseconds, 0 for no limit
+  private long timeBudget = 0;
+  // The iterations without improvement that stop a run, 0 for no limit
+  private int stagnationLimit = 0;
+  // The iterations completed by the last run
+  private int iterationsCompleted = 0;
+  // The grade of the best solution after every iteration of the last run
+  private double[] convergenceTrace = new double[0];
+
+  // The pheromones and the best solution kept between the runs, can be null
+  private PheromoneMemory<E> pheromoneMemory = null;
+  // The remembered best solution the first ant of a run follows
+  private List<E> guide = null;
+
   /**
    * A ACO SS algorithm is constructed for the given constraints and minimize
    * function.
@@ -106,26 +138,187 @@ public final class AntColonyOptimizationSS<E>
   }
 
   /**
-   * This function executes the algorithm and returns the chosen subset.
+   * This function executes the algorithm and returns the chosen subset. With a
+   * seed every ant gets a separate random stream that depends only on the
+   * seed, the iteration and the number of the ant, so the ants of an
+   * iteration can be constructed on many threads and the result is the same
+   * as on one. The pheromones are only read while the ants are constructed,
+   * they are updated after all of them are done. With an
+   * {@link IncrementalObjective} the ants grade their solutions while they
+   * construct them.
+   * 
+   * With a time budget or a stagnation limit the algorithm runs in the anytime
+   * mode. It stops when the budget is used up, abandoning the iteration that
+   * is under way, or when the best solution hasn't improved for the
+   * stagnation limit of iterations, and returns the best solution of all the
+   * iterations. At least one iteration is always completed.
    */
+  @Override
   public List<E> execute ()
   {
+    if (threads > 1 && constraintsFactory == null)
+      throw new IllegalStateException("The parallel execution needs a constraints factory");
+    Long baseSeed = seed;
+    if (baseSeed == null && threads > 1)
+      baseSeed = rng.nextLong();
+
+    AnytimeRun<E> run = new AnytimeRun<E>(timeBudget, stagnationLimit);
     initializePheromones();
-    List<List<E>> antSolutions = new ArrayList<List<E>>(antNum);
+    guide =
+      pheromoneMemory != null ? pheromoneMemory.recallBestSolution(workSet)
+                             : null;
     List<E> bestSolution = new ArrayList<E>(0);
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    List<E>[] antSolutions = new List[antNum];
+    double[] grades = new double[antNum];
+
+    int workers = min(threads, max(antNum, 1));
+    ExecutorService executor = workers > 1 ? getExecutor() : null;
+    List<Constraints<E>> workerConstraints =
+      new ArrayList<Constraints<E>>(workers);
+    for (int w = 0; w < workers; w++)
+      workerConstraints.add(workers > 1 ? constraintsFactory
+              .createConstraints() : constraints);
+
+    try {
+      for (int i = 0; i < maxIterations; i++) {
+        if (run.isExpired())
+          break;
+        Arrays.fill(antSolutions, null);
+        if (executor == null) {
+          constructAnts(baseSeed, i, 0, antNum, constraints, antSolutions,
+                        grades, run);
+        }
+        else {
+          List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+          for (int w = 0; w < workers; w++) {
+            final Long iterationSeed = baseSeed;
+            final int iteration = i;
+            final int from = antNum * w / workers;
+            final int to = antNum * (w + 1) / workers;
+            final Constraints<E> cons = workerConstraints.get(w);
+            final List<E>[] solutions = antSolutions;
+            final double[] values = grades;
+            final AnytimeRun<E> anytimeRun = run;
+            futures.add(executor.submit(new Callable<Void>() {
+              @Override
+              public Void call ()
+              {
+                constructAnts(iterationSeed, iteration, from, to, cons,
+                              solutions, values, anytimeRun);
+                return null;
+              }
+            }));
+          }
+          for (Future<Void> future: futures)
+            future.get();
+        }
+
+        // the time ran out before all the ants were done
+        if (Arrays.asList(antSolutions).contains(null))
+          break;
 
-    for (int i = 0; i < maxIterations; i++) {
-      antSolutions.clear();
-      for (int antI = 0; antI < antNum; antI++) {
-        antSolutions.add(constructSolution());
+        // the first of the ants with the lowest grade, like findBestSolution
+        int best = -1;
+        for (int ant = 0; ant < antNum; ant++) {
+          if (best < 0 || grades[ant] < grades[best])
+            best = ant;
+        }
+        double bestGrade;
+        if (best < 0) {
+          bestSolution = new ArrayList<E>(0);
+          bestGrade = Double.POSITIVE_INFINITY;
+          updatePheromones(bestSolution);
+        }
+        else {
+          bestSolution = antSolutions[best];
+          bestGrade = grades[best];
+          updatePheromones(bestSolution, bestGrade);
+        }
+        if (!run.complete(bestSolution, bestGrade))
+          break;
       }
-      bestSolution = findBestSolution(antSolutions);
-      updatePheromones(bestSolution);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
     }
 
+    iterationsCompleted = run.getIterations();
+    convergenceTrace = run.getTrace();
+    if (pheromoneMemory != null) {
+      for (E item: workSet) {
+        pheromoneMemory.store(item, pheromones.get(item));
+      }
+      pheromoneMemory.storeBestSolution(run.getBestSolution() != null ? run
+              .getBestSolution() : bestSolution);
+    }
+    if ((isAnytime() || pheromoneMemory != null)
+        && run.getBestSolution() != null)
+      return run.getBestSolution();
     return bestSolution;
   }
 
+  /**
+   * @return true if the runs stop on a time budget or on stagnation
+   */
+  private boolean isAnytime ()
+  {
+    return timeBudget > 0 || stagnationLimit > 0;
+  }
+
+  /**
+   * Constructs and grades the ants from up to but not including to. Without
+   * a seed the ants use the shared random generator. Stops early, leaving
+   * the rest of the solutions null, if the time budget is used up.
+   */
+  private void constructAnts (Long baseSeed, int iteration, int from, int to,
+                              Constraints<E> cons, List<E>[] solutions,
+                              double[] grades, AnytimeRun<E> run)
+  {
+    for (int ant = from; ant < to; ant++) {
+      if (run.isExpired())
+        return;
+      Random random =
+        baseSeed == null ? rng
+                        : new Random(streamSeed(baseSeed, (long) iteration
+                                                          * antNum + ant));
+      IncrementalObjective.Accumulator<E> accumulator = createAccumulator();
+      solutions[ant] =
+        constructSolution(random, cons, accumulator,
+                          iteration == 0 && ant == 0 ? guide : null);
+      grades[ant] =
+        accumulator != null ? accumulator.grade() : minFunction
+                .gradeSolution(solutions[ant]);
+    }
+  }
+
+  /**
+   * @return a new accumulator if the objective function is incremental or
+   *         else null
+   */
+  private IncrementalObjective.Accumulator<E> createAccumulator ()
+  {
+    if (minFunction instanceof IncrementalObjective)
+      return ((IncrementalObjective<E>) minFunction).createAccumulator();
+    return null;
+  }
+
+  /**
+   * Mixes the seed and the number of a stream so that the streams of nearby
+   * numbers aren't correlated (the finalizer of SplitMix64).
+   */
+  static long streamSeed (long seed, long stream)
+  {
+    long z = seed + (stream + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
   /**
    * This function takes the best solutions and updates all the pheromone of the
    * working set.
@@ -133,9 +326,15 @@ public final class AntColonyOptimizationSS<E>
    */
   void updatePheromones (List<E> bestSolution)
   {
-   
+    updatePheromones(bestSolution, minFunction.gradeSolution(bestSolution));
+  }
+
+  /**
+   * Updates the pheromones with the already known grade of the best solution
+   */
+  void updatePheromones (List<E> bestSolution, double bestValue)
+  {
     Set<E> bestSet = new HashSet<E>(bestSolution);
-    double bestValue = minFunction.gradeSolution(bestSolution);
     //Apply evaporations
     for(E item : workSet){
       
@@ -182,6 +381,44 @@ public final class AntColonyOptimizationSS<E>
    * @return the constructed solution
    */
   List<E> constructSolution ()
+  {
+    return constructSolution(rng, constraints);
+  }
+
+  /**
+   * Constructs a random solution for one ant with the given random stream
+   * and constraints
+   * 
+   * @return the constructed solution
+   */
+  List<E> constructSolution (Random rng, Constraints<E> constraints)
+  {
+    return constructSolution(rng, constraints, null);
+  }
+
+  /**
+   * Constructs a random solution for one ant and adds its items to the
+   * accumulator
+   * 
+   * @return the constructed solution
+   */
+  List<E> constructSolution (Random rng, Constraints<E> constraints,
+                             IncrementalObjective.Accumulator<E> accumulator)
+  {
+    return constructSolution(rng, constraints, accumulator, null);
+  }
+
+  /**
+   * Constructs a solution for one ant that chooses the items of the guide
+   * while the constraints allow it and then chooses randomly
+   * 
+   * @param guide
+   *          the items to choose first in their order, can be null
+   * @return the constructed solution
+   */
+  List<E> constructSolution (Random rng, Constraints<E> constraints,
+                             IncrementalObjective.Accumulator<E> accumulator,
+                             List<E> guide)
   {
     // This contains the solutions
     List<E> solution = new ArrayList<E>();
@@ -189,12 +426,30 @@ public final class AntColonyOptimizationSS<E>
     List<Double> probabilities = new ArrayList<Double>();
     double prob = 0;
 
-    // randomly add the first producer to the solution
-    solution.add(workSet.get(rng.nextInt(workSet.size())));
+    // randomly add the first producer to the solution, or the first of the
+    // guide
+    List<E> pending = null;
+    if (guide != null && !guide.isEmpty()) {
+      solution.add(guide.get(0));
+      pending = new LinkedList<E>(guide.subList(1, guide.size()));
+    }
+    else {
+      solution.add(workSet.get(rng.nextInt(workSet.size())));
+    }
+    if (accumulator != null)
+      accumulator.add(solution.get(0));
 
     // initialize the candidates list
     candidates = constraints.initializeCandidates(solution);
     while (candidates.size() != 0) {
+      E guided = pending != null ? guidedChoice(pending, candidates) : null;
+      if (guided != null) {
+        solution.add(guided);
+        if (accumulator != null)
+          accumulator.add(guided);
+        candidates = constraints.updateCandidates(solution, candidates);
+        continue;
+      }
       // Calculate the probabilities
       probabilities = calculateProbabilities(candidates, probabilities);
       // Make the choice
@@ -203,6 +458,8 @@ public final class AntColonyOptimizationSS<E>
         double tier = probabilities.get(i);
         if (prob <= tier) {
           solution.add(candidates.get(i));
+          if (accumulator != null)
+            accumulator.add(candidates.get(i));
           break;
         }
         prob -= tier;
@@ -213,6 +470,26 @@ public final class AntColonyOptimizationSS<E>
     return solution;
   }
 
+  /**
+   * Removes the first pending item that is a candidate
+   * 
+   * @return the item or null if none is a candidate
+   */
+  private E guidedChoice (List<E> pending, List<E> candidates)
+  {
+    if (pending.isEmpty())
+      return null;
+    Set<E> candidateSet = new HashSet<E>(candidates);
+    for (Iterator<E> it = pending.iterator(); it.hasNext();) {
+      E item = it.next();
+      if (candidateSet.contains(item)) {
+        it.remove();
+        return item;
+      }
+    }
+    return null;
+  }
+
   /**
    * Calculates the list of probabilities for choosing the next item
    * 
@@ -253,12 +530,14 @@ public final class AntColonyOptimizationSS<E>
   }
 
   /**
-   * This function initializes all the pheromones
+   * This function initializes all the pheromones, from the pheromone memory
+   * if there is one
    */
   void initializePheromones ()
   {
     for (E e: workSet) {
-      pheromones.put(e, tmax);
+      pheromones.put(e, pheromoneMemory != null ? pheromoneMemory
+              .recall(e, tmin, tmax) : tmax);
     }
   }
 
@@ -422,6 +701,156 @@ public final class AntColonyOptimizationSS<E>
     this.rng = rng;
   }
 
+  /**
+   * @return the seed of the random streams of the ants, null if they use the
+   *         shared random generator
+   */
+  public Long getSeed ()
+  {
+    return seed;
+  }
+
+  /**
+   * Gives every ant its own random stream derived from the seed, so that the
+   * result doesn't depend on the number of threads.
+   * 
+   * @param seed the seed, null to go back to the shared random generator
+   */
+  public void setSeed (Long seed)
+  {
+    this.seed = seed;
+  }
+
+  /**
+   * @return the number of threads that construct the ants
+   */
+  public int getThreads ()
+  {
+    return threads;
+  }
+
+  /**
+   * Constructs the ants of every iteration on many threads. Each thread gets
+   * its own constraints from the factory, since the constraints keep the
+   * state of the solution that is constructed. The objective function must
+   * be safe to call from many threads. Without a seed the streams of the
+   * ants are seeded from the shared random generator.
+   * 
+   * @param threads the number of threads
+   * @param constraintsFactory creates the constraints of every thread
+   */
+  public void setParallel (int threads, ConstraintsFactory<E> constraintsFactory)
+  {
+    if (threads < 1 || (threads > 1 && constraintsFactory == null))
+      throw new IllegalArgumentException("Invalid parallel execution");
+    if (threads != this.threads)
+      shutdown();
+    this.threads = threads;
+    this.constraintsFactory = constraintsFactory;
+  }
+
+  /**
+   * Constructs the ants on the given pool instead of one created by the
+   * solver. The pool is not shut down by the solver.
+   * 
+   * @param executor the pool, null to let the solver create its own
+   */
+  public void setExecutor (ExecutorService executor)
+  {
+    shutdown();
+    this.executor = executor;
+  }
+
+  /**
+   * Shuts down the pool the solver created for the parallel runs, if any. A
+   * later parallel run creates a new one.
+   */
+  public void shutdown ()
+  {
+    if (ownsExecutor) {
+      executor.shutdown();
+      executor = null;
+      ownsExecutor = false;
+    }
+  }
+
+  private ExecutorService getExecutor ()
+  {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        private int count = 0;
+
+        @Override
+        public synchronized Thread newThread (Runnable runnable)
+        {
+          Thread thread = new Thread(runnable, "aco-ant-" + count++);
+          // a pool that is not shut down doesn't keep the JVM alive
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      ownsExecutor = true;
+    }
+    return executor;
+  }
+
+  /**
+   * @return the time a run may take in nanoseconds, 0 for no limit
+   */
+  public long getTimeBudget ()
+  {
+    return timeBudget;
+  }
+
+  /**
+   * @param timeBudget
+   *          the time a run may take in nanoseconds, 0 for no limit
+   */
+  public void setTimeBudget (long timeBudget)
+  {
+    if (timeBudget < 0)
+      throw new IllegalArgumentException("Negative time budget");
+    this.timeBudget = timeBudget;
+  }
+
+  /**
+   * @return the iterations without improvement that stop a run, 0 for no
+   *         limit
+   */
+  public int getStagnationLimit ()
+  {
+    return stagnationLimit;
+  }
+
+  /**
+   * @param stagnationLimit
+   *          the iterations without improvement that stop a run, 0 for no
+   *          limit
+   */
+  public void setStagnationLimit (int stagnationLimit)
+  {
+    if (stagnationLimit < 0)
+      throw new IllegalArgumentException("Negative stagnation limit");
+    this.stagnationLimit = stagnationLimit;
+  }
+
+  /**
+   * @return the number of iterations the last run completed
+   */
+  public int getIterationsCompleted ()
+  {
+    return iterationsCompleted;
+  }
+
+  /**
+   * @return the grade of the best solution so far after every completed
+   *         iteration of the last run
+   */
+  public double[] getConvergenceTrace ()
+  {
+    return convergenceTrace.clone();
+  }
+
   /**
    * @return the pheromones
    */
@@ -429,6 +858,28 @@ public final class AntColonyOptimizationSS<E>
   {
     return pheromones;
   }
+
+  /**
+   * @return the memory of the pheromones between the runs, null if there is
+   *         none
+   */
+  public PheromoneMemory<E> getPheromoneMemory ()
+  {
+    return pheromoneMemory;
+  }
+
+  /**
+   * Keeps the pheromones and the best solution of every run in the memory
+   * and starts the next run from them. A run with a memory returns the best
+   * solution of all its iterations.
+   * 
+   * @param pheromoneMemory
+   *          the memory, null to start every run cold
+   */
+  public void setPheromoneMemory (PheromoneMemory<E> pheromoneMemory)
+  {
+    this.pheromoneMemory = pheromoneMemory;
+  }
   
   /**
    * @return the max iterations of the algorithm
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class keeps the progress of one run of an aco algorithm in the anytime
+ * mode: the best solution so far, the number of completed iterations and the
+ * grade of the best solution after every iteration. It tells when the run
+ * must stop because its time budget is used up or because the best solution
+ * hasn't improved for a number of iterations.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+final class AnytimeRun<E>
+{
+  // The time the run started
+  private final long start;
+  // The time the run may take in nanoseconds, 0 for no limit
+  private final long timeBudget;
+  // The iterations without improvement that stop the run, 0 for no limit
+  private final int stagnationLimit;
+
+  private List<E> bestSolution = null;
+  private double bestGrade = Double.POSITIVE_INFINITY;
+  private int iterations = 0;
+  private int stagnantIterations = 0;
+  private double[] trace = new double[16];
+
+  AnytimeRun (long timeBudget, int stagnationLimit)
+  {
+    this.start = System.nanoTime();
+    this.timeBudget = timeBudget;
+    this.stagnationLimit = stagnationLimit;
+  }
+
+  /**
+   * @return true if the time budget is used up and an iteration has been
+   *         completed, so the run can stop. Safe to call from many threads.
+   */
+  boolean isExpired ()
+  {
+    return timeBudget > 0 && iterations > 0
+           && System.nanoTime() - start >= timeBudget;
+  }
+
+  /**
+   * Records the best solution of a completed iteration.
+   * 
+   * @return false if the best solution hasn't improved for the stagnation
+   *         limit and the run should stop
+   */
+  boolean complete (List<E> solution, double grade)
+  {
+    if (bestSolution == null || grade < bestGrade) {
+      bestSolution = solution;
+      bestGrade = grade;
+      stagnantIterations = 0;
+    }
+    else {
+      stagnantIterations++;
+    }
+    if (iterations == trace.length)
+      trace = Arrays.copyOf(trace, iterations * 2);
+    trace[iterations++] = bestGrade;
+    return stagnationLimit == 0 || stagnantIterations < stagnationLimit;
+  }
+
+  /**
+   * @return the best solution so far, null before the first iteration
+   */
+  List<E> getBestSolution ()
+  {
+    return bestSolution;
+  }
+
+  /**
+   * @return the number of completed iterations
+   */
+  int getIterations ()
+  {
+    return iterations;
+  }
+
+  /**
+   * @return the grade of the best solution after every completed iteration
+   */
+  double[] getTrace ()
+  {
+    return Arrays.copyOf(trace, iterations);
+  }
+}
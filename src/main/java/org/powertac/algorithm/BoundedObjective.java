@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.List;
+
+/**
+ * An objective function that can bound the grade of the solutions that extend
+ * a partial one. {@link BranchAndBoundSS} skips the extensions of a solution
+ * when the bound isn't better than the best solution found.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public interface BoundedObjective<E> extends ObjectiveMinFunction<E>
+{
+  /**
+   * Returns a value that is not greater than the grade of the solution plus
+   * any subset of the additions. Zero is always valid since the grades are
+   * positive.
+   * 
+   * @param solution
+   *          The partial solution, it contains at least one item
+   * @param additions
+   *          The items that can still be added to the solution
+   * @return The lower bound of the grade
+   */
+  double lowerBound (List<E> solution, List<E> additions);
+}
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * This class finds the best solution by a depth first search of all the
+ * subsets that the constraints allow. The distinct items of the working set
+ * are ordered by their grade and every subset is visited once, by adding the
+ * items in that order, so the cheap subsets are visited first. The search
+ * starts with the solution of {@link GreedySS} as the best one, and with a
+ * {@link BoundedObjective} it skips the extensions of a subset that can't be
+ * better than the best.
+ * </p>
+ * <p>
+ * The constraints are only asked for candidates in the way the ants do, so
+ * the candidates of a subset are found by initializing the constraints with
+ * its first item and updating them with the rest. The constraints must give
+ * the same candidates every time they are asked for a subset, like the energy
+ * constraints that ask the producers for their output once. The result is
+ * exact for constraints that allow every subset of an allowed solution, like
+ * the energy constraints when all the producers have the same sign. The
+ * number of subsets is exponential, so the search stops after a maximum
+ * number of them and then the best solution so far is returned.
+ * </p>
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public final class BranchAndBoundSS<E> implements SubsetSelection<E>
+{
+  // The maximum number of subsets that a run will visit
+  private int maxNodes = 1000000;
+  // This is the working set of the algorithm from which a optimal subset is
+  // estimated
+  private List<E> workSet;
+  // The constraints objects the returns the candidate from which the next
+  // item is chosen.
+  private Constraints<E> constraints;
+  // The function that generates the lowers value for the best solution
+  private ObjectiveMinFunction<E> minFunction;
+
+  // The position of every distinct item in the order of the search
+  private Map<E, Integer> order = new HashMap<E, Integer>();
+  // The best solution and its grade
+  private List<E> bestSolution = new ArrayList<E>(0);
+  private double bestGrade = Double.POSITIVE_INFINITY;
+  // The subsets visited by the last run
+  private int nodesVisited = 0;
+  // False if the last run stopped before visiting all the subsets
+  private boolean optimal = false;
+
+  public BranchAndBoundSS (List<E> workSet, Constraints<E> constraints,
+                           ObjectiveMinFunction<E> minFunction)
+  {
+    this.workSet = workSet;
+    this.constraints = constraints;
+    this.minFunction = minFunction;
+  }
+
+  @Override
+  public List<E> execute ()
+  {
+    GreedySS<E> greedy = new GreedySS<E>(workSet, constraints, minFunction);
+    bestSolution = greedy.execute();
+    bestGrade = greedy.getBestGrade();
+    nodesVisited = 0;
+    optimal = true;
+
+    List<E> items = initializeOrder();
+    for (E item: items) {
+      List<E> solution = new ArrayList<E>();
+      solution.add(item);
+      search(solution);
+    }
+    return new ArrayList<E>(bestSolution);
+  }
+
+  /*
+   * Orders the distinct items of the working set by their grade
+   */
+  private List<E> initializeOrder ()
+  {
+    final Map<E, Double> grades = new HashMap<E, Double>();
+    List<E> items = new ArrayList<E>();
+    for (E item: workSet) {
+      if (!grades.containsKey(item)) {
+        grades.put(item, minFunction.gradeItem(item));
+        items.add(item);
+      }
+    }
+    Collections.sort(items, new Comparator<E>() {
+      @Override
+      public int compare (E o1, E o2)
+      {
+        return Double.compare(grades.get(o1), grades.get(o2));
+      }
+    });
+
+    order.clear();
+    for (int i = 0; i < items.size(); i++) {
+      order.put(items.get(i), i);
+    }
+    return items;
+  }
+
+  /*
+   * Grades the solution and visits its extensions by the items that come
+   * after its last one
+   */
+  private void search (List<E> solution)
+  {
+    if (nodesVisited >= maxNodes) {
+      optimal = false;
+      return;
+    }
+    nodesVisited++;
+
+    double grade = minFunction.gradeSolution(solution);
+    if (grade < bestGrade) {
+      bestGrade = grade;
+      bestSolution = new ArrayList<E>(solution);
+    }
+
+    List<E> additions = additions(solution);
+    if (additions.isEmpty())
+      return;
+    if (minFunction instanceof BoundedObjective) {
+      double bound =
+        ((BoundedObjective<E>) minFunction).lowerBound(solution, additions);
+      if (bound >= bestGrade)
+        return;
+    }
+
+    for (E item: additions) {
+      solution.add(item);
+      search(solution);
+      solution.remove(solution.size() - 1);
+    }
+  }
+
+  /*
+   * Returns the candidates of the solution that come after its last item in
+   * the order of the search
+   */
+  private List<E> additions (List<E> solution)
+  {
+    List<E> partial = new ArrayList<E>(solution.size());
+    partial.add(solution.get(0));
+    List<E> candidates = constraints.initializeCandidates(partial);
+    for (int i = 1; i < solution.size(); i++) {
+      partial.add(solution.get(i));
+      candidates = constraints.updateCandidates(partial, candidates);
+    }
+
+    int last = order.get(solution.get(solution.size() - 1));
+    boolean[] added = new boolean[order.size()];
+    List<E> result = new ArrayList<E>();
+    for (E candidate: candidates) {
+      int position = order.get(candidate);
+      if (position > last && !added[position]) {
+        added[position] = true;
+        result.add(candidate);
+      }
+    }
+    Collections.sort(result, new Comparator<E>() {
+      @Override
+      public int compare (E o1, E o2)
+      {
+        return order.get(o1) - order.get(o2);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * @return the grade of the solution of the last run
+   */
+  public double getBestGrade ()
+  {
+    return bestGrade;
+  }
+
+  /**
+   * @return the subsets visited by the last run
+   */
+  public int getNodesVisited ()
+  {
+    return nodesVisited;
+  }
+
+  /**
+   * @return true if the last run visited all the subsets so its solution is
+   *         the best one
+   */
+  public boolean isOptimal ()
+  {
+    return optimal;
+  }
+
+  /**
+   * @return the maxNodes
+   */
+  public int getMaxNodes ()
+  {
+    return maxNodes;
+  }
+
+  /**
+   * @param maxNodes
+   *          the maximum number of subsets a run visits
+   */
+  public void setMaxNodes (int maxNodes)
+  {
+    if (maxNodes < 1)
+      throw new IllegalArgumentException("At least one subset must be visited");
+    this.maxNodes = maxNodes;
+  }
+
+  /**
+   * @return the workSet
+   */
+  public List<E> getWorkSet ()
+  {
+    return workSet;
+  }
+
+  /**
+   * @return the constraints
+   */
+  public Constraints<E> getConstraints ()
+  {
+    return constraints;
+  }
+
+  /**
+   * @return the minFunction
+   */
+  public ObjectiveMinFunction<E> getMinFunction ()
+  {
+    return minFunction;
+  }
+}
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+/**
+ * This interface creates the constraints of every thread of a parallel
+ * execution of the aco algorithm. The constraints keep the state of the
+ * solution under construction so they can't be shared between threads.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public interface ConstraintsFactory<E>
+{
+  /**
+   * @return new constraints for the same problem
+   */
+  Constraints<E> createConstraints ();
+}
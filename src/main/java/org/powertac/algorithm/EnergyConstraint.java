@@ -48,6 +48,9 @@ public class EnergyConstraint implements Constraints<Producer>
   private Map<Producer, Double> powerCache = new HashMap<Producer, Double>();
   // The sum of previous processed solution
   private double previousEnergySum = 0;
+  // The outputs shared with the objective function, null to ask the
+  // producers
+  private OutputSnapshot snapshot = null;
 
   /**
    * Constructs the energy constraint for the Ant Colony algorithm and Producer
@@ -65,11 +68,47 @@ public class EnergyConstraint implements Constraints<Producer>
     this.report = report;
   }
 
+  /**
+   * Constructs the energy constraint on the outputs of a snapshot. The
+   * producers aren't asked for their output again.
+   * 
+   * @param workSet The set of Producers on which the algorithm is run
+   * @param energyThreshold The energy threshold. Must be negative.
+   * @param snapshot The outputs of the producers for the run.
+   */
+  public EnergyConstraint (List<Producer> workSet, double energyThreshold,
+                           OutputSnapshot snapshot)
+  {
+    this(workSet, energyThreshold, snapshot.getReport());
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Creates energy constraints on the same snapshot for the threads of a
+   * parallel execution.
+   */
+  public static ConstraintsFactory<Producer>
+    factory (final List<Producer> workSet, final double energyThreshold,
+             final OutputSnapshot snapshot)
+  {
+    return new ConstraintsFactory<Producer>() {
+      @Override
+      public Constraints<Producer> createConstraints ()
+      {
+        return new EnergyConstraint(workSet, energyThreshold, snapshot);
+      }
+    };
+  }
+
   /*
-   * This function caches the producer's power output
+   * This function caches the producer's power output. The producers are asked
+   * once, since their output may change their state or be random, so every
+   * solution is checked against the same outputs.
    */
   private void initializeCache ()
   {
+    if (snapshot != null || !powerCache.isEmpty())
+      return;
     for (Producer prod: workSet) {
       powerCache.put(prod, prod.getOutput(report));
     }
@@ -123,6 +162,8 @@ public class EnergyConstraint implements Constraints<Producer>
    */
   protected double getProducerPower (Producer prod)
   {
+    if (snapshot != null)
+      return snapshot.getOutput(prod);
     return powerCache.get(prod);
   }
 
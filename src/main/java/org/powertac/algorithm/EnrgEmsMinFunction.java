@@ -24,12 +24,16 @@ import org.powertac.producer.Producer;
 
 /**
  * This class implement the ObjectiveMinFunction interface as a set of weights
- * for the energy cost, emissions and distance from the energy limit.
+ * for the energy cost, emissions and distance from the energy limit. The
+ * solutions can also be graded while they are constructed through an
+ * accumulator, and their extensions can be bounded for a branch and bound
+ * search.
  * 
  * @author Spyros Papageorgiou
  * 
  */
-public class EnrgEmsMinFunction implements ObjectiveMinFunction<Producer>
+public class EnrgEmsMinFunction implements IncrementalObjective<Producer>,
+  BoundedObjective<Producer>
 {
 
   private double limit;
@@ -38,7 +42,14 @@ public class EnrgEmsMinFunction implements ObjectiveMinFunction<Producer>
   private double limitWeight;
   private WeatherReport waetherReport;
   private List<Producer> workSet;
-  private Map<Producer, Double> energyCache = new HashMap<Producer, Double>();
+  // The energy and the weighted cost of every producer
+  private Map<Producer, CacheEntry> energyCache =
+    new HashMap<Producer, CacheEntry>();
+  // Set after the cache is filled so that the ants of a parallel execution
+  // see the whole cache
+  private volatile boolean cached = false;
+  // The outputs shared with the constraints, null to ask the producers
+  private OutputSnapshot snapshot = null;
 
   public EnrgEmsMinFunction (double limit, double costWeight,
                              double emissionWeight, double limitWeight,
@@ -52,21 +63,41 @@ public class EnrgEmsMinFunction implements ObjectiveMinFunction<Producer>
     this.workSet = workSet;
   }
 
-  public void initiliazeCache ()
+  /**
+   * Constructs the objective function on the outputs of a snapshot. The
+   * producers aren't asked for their output again.
+   */
+  public EnrgEmsMinFunction (double limit, double costWeight,
+                             double emissionWeight, double limitWeight,
+                             OutputSnapshot snapshot, List<Producer> workSet)
+  {
+    this(limit, costWeight, emissionWeight, limitWeight,
+         snapshot.getReport(), workSet);
+    this.snapshot = snapshot;
+  }
+
+  public synchronized void initiliazeCache ()
   {
     energyCache.clear();
 
     for (Producer prod: workSet) {
-      energyCache.put(prod, prod.getOutput(waetherReport));
+      double energy =
+        snapshot != null ? snapshot.getOutput(prod) : prod
+                .getOutput(waetherReport);
+      energyCache.put(prod, new CacheEntry(energy, gradeItem(prod)));
     }
+    cached = true;
   }
 
-  @Override
-  public double gradeItem (Producer item)
+  private synchronized void ensureCache ()
   {
-    if (energyCache.isEmpty())
+    if (!cached)
       initiliazeCache();
+  }
 
+  @Override
+  public double gradeItem (Producer item)
+  {
     double result =
       (costWeight * item.getCostPerKw() + emissionWeight
                                           * item.getCo2Emissions());
@@ -76,22 +107,106 @@ public class EnrgEmsMinFunction implements ObjectiveMinFunction<Producer>
   @Override
   public double gradeSolution (List<Producer> solution)
   {
-    if (energyCache.isEmpty())
-      initiliazeCache();
+    Accumulator<Producer> accumulator = createAccumulator();
+    for (Producer prod: solution) {
+      accumulator.add(prod);
+    }
+    return accumulator.grade();
+  }
+
+  @Override
+  public Accumulator<Producer> createAccumulator ()
+  {
+    if (!cached)
+      ensureCache();
+    return new EnergyAccumulator();
+  }
 
-    double sum = 0;
-    double energySum = 0;
+  /**
+   * With a negative limit, no positive outputs and no negative weights the
+   * cost part of the grade is a weighted average of the weights, so it can't
+   * be lower than the average of the solution or the lowest weight of the
+   * additions, and the limit part is lowest at the energy closest to the
+   * limit that the additions can reach. In any other case the bound is zero.
+   */
+  @Override
+  public double lowerBound (List<Producer> solution, List<Producer> additions)
+  {
+    if (!cached)
+      ensureCache();
+    if (limit >= 0 || limitWeight < 0)
+      return 0;
+
+    double cost = 0;
+    double amount = 0;
     for (Producer prod: solution) {
-      double energy = energyCache.get(prod);
-      sum +=
-        (  costWeight * prod.getCostPerKw()
-         + emissionWeight * prod.getCo2Emissions()) * energy;
-      energySum += energy;
+      CacheEntry entry = energyCache.get(prod);
+      if (entry.energy > 0 || entry.weight < 0)
+        return 0;
+      cost -= entry.weight * entry.energy;
+      amount -= entry.energy;
+    }
+    if (amount == 0)
+      return 0;
+
+    double minWeight = cost / amount;
+    double maxAmount = amount;
+    for (Producer prod: additions) {
+      CacheEntry entry = energyCache.get(prod);
+      if (entry.energy > 0 || entry.weight < 0)
+        return 0;
+      minWeight = Math.min(minWeight, entry.weight);
+      maxAmount -= entry.energy;
+    }
+
+    double target = -limit;
+    double distance = 0;
+    if (maxAmount < target)
+      distance = limitWeight * (target - maxAmount) / maxAmount;
+    else if (amount > target)
+      distance = limitWeight * (amount - target) / amount;
+    return minWeight + distance;
+  }
+
+  /*
+   * The energy and the weighted cost of a producer
+   */
+  private static final class CacheEntry
+  {
+    final double energy;
+    final double weight;
+
+    CacheEntry (double energy, double weight)
+    {
+      this.energy = energy;
+      this.weight = weight;
+    }
+  }
+
+  /*
+   * The sums of the weighted cost and the energy of a solution
+   */
+  private final class EnergyAccumulator implements Accumulator<Producer>
+  {
+    private double sum = 0;
+    private double energySum = 0;
+
+    @Override
+    public void add (Producer prod)
+    {
+      CacheEntry entry = energyCache.get(prod);
+      sum += entry.weight * entry.energy;
+      energySum += entry.energy;
+    }
+
+    @Override
+    public double grade ()
+    {
+      double result =
+        Math.abs(sum) + limitWeight * Math.abs(energySum - limit);
+      result = result / Math.abs(energySum);
+      return result;
     }
-    
-    double result = Math.abs(sum) + limitWeight * Math.abs(energySum - limit);
-    result = result/Math.abs(energySum);
-    return result;
   }
 
 }
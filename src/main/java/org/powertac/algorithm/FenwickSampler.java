@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+/**
+ * This class chooses the index of a candidate with probability proportional to
+ * its weight. The weights are kept in a Fenwick tree so that sampling and
+ * removing a candidate are O(log n) and building the sampler from all the
+ * candidates is O(n).
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public final class FenwickSampler
+{
+  // The number of indexes
+  private int size;
+  // The weights by index, zero for the indexes that aren't candidates
+  private double[] weights;
+  // The Fenwick tree of the weights, one based
+  private double[] tree;
+  // True for the indexes that are candidates
+  private boolean[] present;
+  // The number of candidates
+  private int count = 0;
+  // The largest power of two that is not greater than the size
+  private int topStep = 0;
+
+  /**
+   * Creates an empty sampler for the indexes 0..size-1
+   */
+  public FenwickSampler (int size)
+  {
+    this.size = size;
+    weights = new double[size];
+    tree = new double[size + 1];
+    present = new boolean[size];
+    topStep = Integer.highestOneBit(max(size, 1));
+  }
+
+  private static int max (int a, int b)
+  {
+    return a > b ? a : b;
+  }
+
+  /**
+   * Removes all the candidates.
+   */
+  public void clear ()
+  {
+    for (int i = 0; i < size; i++) {
+      weights[i] = 0;
+      present[i] = false;
+      tree[i + 1] = 0;
+    }
+    count = 0;
+  }
+
+  /**
+   * Adds a candidate without updating the tree. {@link #build()} must be
+   * called after the candidates are put.
+   */
+  public void put (int index, double weight)
+  {
+    if (weight < 0 || Double.isNaN(weight))
+      throw new IllegalArgumentException("Invalid weight " + weight);
+    if (!present[index]) {
+      present[index] = true;
+      count++;
+    }
+    weights[index] = weight;
+  }
+
+  /**
+   * Builds the tree from the weights in O(n).
+   */
+  public void build ()
+  {
+    for (int i = 1; i <= size; i++) {
+      tree[i] = weights[i - 1];
+    }
+    for (int i = 1; i <= size; i++) {
+      int parent = i + (i & -i);
+      if (parent <= size)
+        tree[parent] += tree[i];
+    }
+  }
+
+  /**
+   * Removes the candidate if it is one.
+   */
+  public void remove (int index)
+  {
+    if (!present[index])
+      return;
+    present[index] = false;
+    count--;
+    double delta = -weights[index];
+    weights[index] = 0;
+    if (delta != 0) {
+      for (int i = index + 1; i <= size; i += i & -i) {
+        tree[i] += delta;
+      }
+    }
+  }
+
+  /**
+   * @return the sum of the weights of the candidates
+   */
+  public double total ()
+  {
+    double sum = 0;
+    for (int i = size; i > 0; i -= i & -i) {
+      sum += tree[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Chooses a candidate.
+   * 
+   * @param random
+   *          a uniform number in [0, 1)
+   * @return the index of the candidate whose weights contain the random
+   *         number times the total weight
+   */
+  public int sample (double random)
+  {
+    if (count == 0)
+      throw new IllegalStateException("There are no candidates");
+    double target = random * total();
+    int position = 0;
+    for (int step = topStep; step > 0; step >>= 1) {
+      int next = position + step;
+      if (next <= size && tree[next] <= target) {
+        position = next;
+        target -= tree[next];
+      }
+    }
+    if (position < size && present[position] && weights[position] > 0)
+      return position;
+
+    // rounding of the removals or candidates without weight, take the last
+    // candidate with weight or else the first candidate
+    for (int i = size - 1; i >= 0; i--) {
+      if (present[i] && weights[i] > 0)
+        return i;
+    }
+    for (int i = 0; i < size; i++) {
+      if (present[i])
+        return i;
+    }
+    throw new IllegalStateException("There are no candidates");
+  }
+
+  /**
+   * @return true if the index is a candidate
+   */
+  public boolean contains (int index)
+  {
+    return present[index];
+  }
+
+  /**
+   * @return the number of candidates
+   */
+  public int size ()
+  {
+    return count;
+  }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class builds a single solution by always adding the candidate with the
+ * lowest item grade, which for the producers is the weighted cost per kWh.
+ * The construction starts from the item with the lowest grade. Adding an item
+ * can make the grade of the solution worse, so the best prefix of the
+ * construction is returned. The method needs no parameters and takes O(n^2)
+ * for a working set of n items, so it is the fallback for working sets that
+ * are too large for the other solvers.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public final class GreedySS<E> implements SubsetSelection<E>
+{
+  // This is the working set of the algorithm from which a optimal subset is
+  // estimated
+  private List<E> workSet;
+  // The constraints objects the returns the candidate from which the next
+  // item is chosen.
+  private Constraints<E> constraints;
+  // The function that generates the lowers value for the best solution
+  private ObjectiveMinFunction<E> minFunction;
+  // The grade of the solution of the last run
+  private double bestGrade = Double.POSITIVE_INFINITY;
+
+  public GreedySS (List<E> workSet, Constraints<E> constraints,
+                   ObjectiveMinFunction<E> minFunction)
+  {
+    this.workSet = workSet;
+    this.constraints = constraints;
+    this.minFunction = minFunction;
+  }
+
+  @Override
+  public List<E> execute ()
+  {
+    bestGrade = Double.POSITIVE_INFINITY;
+    if (workSet.isEmpty())
+      return new ArrayList<E>(0);
+
+    Map<E, Double> grades = new HashMap<E, Double>();
+    E first = null;
+    for (E item: workSet) {
+      double grade = minFunction.gradeItem(item);
+      grades.put(item, grade);
+      if (first == null || grade < grades.get(first))
+        first = item;
+    }
+
+    IncrementalObjective.Accumulator<E> accumulator =
+      minFunction instanceof IncrementalObjective
+        ? ((IncrementalObjective<E>) minFunction).createAccumulator() : null;
+    List<E> solution = new ArrayList<E>();
+    int bestSize = 0;
+    List<E> candidates = null;
+    E item = first;
+    while (item != null) {
+      solution.add(item);
+      if (accumulator != null)
+        accumulator.add(item);
+      double grade =
+        accumulator != null ? accumulator.grade() : minFunction
+                .gradeSolution(solution);
+      if (bestSize == 0 || grade < bestGrade) {
+        bestGrade = grade;
+        bestSize = solution.size();
+      }
+
+      if (candidates == null)
+        candidates = constraints.initializeCandidates(solution);
+      else
+        candidates = constraints.updateCandidates(solution, candidates);
+      item = cheapest(candidates, grades);
+    }
+    return new ArrayList<E>(solution.subList(0, bestSize));
+  }
+
+  /*
+   * Returns the candidate with the lowest grade or null if there are none
+   */
+  private E cheapest (List<E> candidates, Map<E, Double> grades)
+  {
+    E result = null;
+    double resultGrade = 0;
+    for (E candidate: candidates) {
+      double grade = grades.get(candidate);
+      if (result == null || grade < resultGrade) {
+        result = candidate;
+        resultGrade = grade;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the grade of the solution of the last run
+   */
+  public double getBestGrade ()
+  {
+    return bestGrade;
+  }
+
+  /**
+   * @return the workSet
+   */
+  public List<E> getWorkSet ()
+  {
+    return workSet;
+  }
+
+  /**
+   * @return the constraints
+   */
+  public Constraints<E> getConstraints ()
+  {
+    return constraints;
+  }
+
+  /**
+   * @return the minFunction
+   */
+  public ObjectiveMinFunction<E> getMinFunction ()
+  {
+    return minFunction;
+  }
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Constraints that can tell which candidates a choice made infeasible instead
+ * of returning the whole list of the remaining candidates. The
+ * {@link IndexedAntColonyOptimizationSS} keeps the candidates of these
+ * constraints in a {@link FenwickSampler} and removes only the reported ones,
+ * so a choice costs O(log n) for each removed candidate instead of O(n).
+ * </p>
+ * <p>
+ * The candidates are the ones returned by
+ * {@link Constraints#initializeCandidates(List)} minus the chosen items and
+ * the ones reported by
+ * {@link #updateCandidates(List, Object, List)}.
+ * </p>
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public interface IncrementalConstraints<E> extends Constraints<E>
+{
+  /**
+   * This function is called after each choice on the item is made. The chosen
+   * item is removed from the candidates by the caller.
+   * 
+   * @param solution
+   *          The partial or complete solution, with the chosen item last
+   * @param chosen
+   *          The item that was added to the solution
+   * @param removed
+   *          The empty list to which the candidates that can't be chosen
+   *          anymore are added. Reporting a candidate that was already removed
+   *          is harmless.
+   */
+  void updateCandidates (List<E> solution, E chosen, List<E> removed);
+}
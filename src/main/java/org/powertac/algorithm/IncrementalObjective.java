@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+/**
+ * <p>
+ * An objective function that can grade a solution while it is constructed.
+ * The ants add every chosen item to an accumulator, so the grade of a solution
+ * is known when its construction ends and it isn't graded again by the
+ * selection of the best ant and the update of the pheromones.
+ * </p>
+ * <p>
+ * The grade of an accumulator must be the same as
+ * {@link ObjectiveMinFunction#gradeSolution(java.util.List)} for the items
+ * added to it in the same order.
+ * </p>
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public interface IncrementalObjective<E> extends ObjectiveMinFunction<E>
+{
+  /**
+   * @return a new empty accumulator. Each ant gets its own so accumulators
+   *         are only used by one thread.
+   */
+  Accumulator<E> createAccumulator ();
+
+  /**
+   * The state of the grade of a solution under construction
+   */
+  public interface Accumulator<E>
+  {
+    /**
+     * Adds an item to the solution
+     */
+    void add (E item);
+
+    /**
+     * @return the grade of the items added so far
+     */
+    double grade ();
+  }
+}
@@ -0,0 +1,663 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static java.lang.Math.*;
+
+/**
+ * This class implements the same ant colony optimization method as
+ * {@link AntColonyOptimizationSS} but maps the working set to the indexes
+ * 0..n-1 once and keeps the pheromones and the local attractiveness of the
+ * items in arrays. The attractiveness of an item never changes so it is
+ * graded once, and the weight of an item only changes when the pheromones
+ * are updated, so it is calculated once per iteration. The roulette selection
+ * is done over the weights without boxing. Equal items of the working set
+ * share the same index and pheromone. With {@link IncrementalConstraints} the
+ * candidates are kept in a {@link FenwickSampler}, so a choice is O(log n)
+ * instead of a scan of all the candidates. With a {@link PheromoneMemory} the
+ * runs start from the pheromones and the best solution of the previous one.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public final class IndexedAntColonyOptimizationSS<E>
+  implements SubsetSelection<E>
+{
+  // The maximum number of iterations that that algorithm will perform
+  private int maxIterations = 20;
+  // This is the working set of the algorithm from which a optimal subset is
+  // estimated
+  private List<E> workSet;
+  // The constraints objects the returns the candidate from which the next
+  // producer is chosen.
+  private Constraints<E> constraints;
+  // The function that generates the lowers value for the best solution
+  private ObjectiveMinFunction<E> minFunction;
+  // This weight controls the importance of the pheromones
+  private double a;
+  // This weight controls the importance of the local attractiveness
+  private double b;
+  // This parameter represents the pheromone evaporation rate
+  private double evapRate;
+  // The number of ants to use
+  private int antNum;
+  // This parameter specifies the minimum value that a pheromone can take
+  private double tmin;
+  // This parameter specifies the maximum value that a pheromone can take
+  private double tmax;
+
+  // The index of every distinct item of the working set
+  private Map<E, Integer> indexes = new HashMap<E, Integer>();
+  // The distinct items by their index
+  private List<E> items = new ArrayList<E>();
+  // The pheromones of the items
+  private double[] pheromones = new double[0];
+  // The local attractiveness of the items raised to b
+  private double[] attractiveness = new double[0];
+  // The pheromones raised to a times the attractiveness
+  private double[] weights = new double[0];
+  // The indexes and the cumulative weights of the candidates of a step
+  private int[] candidateIndexes = new int[0];
+  private double[] cumulativeWeights = new double[0];
+  // Whether an item is a candidate of the step, by its index
+  private boolean[] candidate = new boolean[0];
+  // The candidates of incremental constraints
+  private FenwickSampler sampler = new FenwickSampler(0);
+  // The candidates that a choice made infeasible
+  private List<E> removed = new ArrayList<E>();
+
+  // The random seed generator
+  private Random rng = new Random();
+  // The seed of the random streams of the ants, null to use rng
+  private Long seed = null;
+  // The wall clock time a run may take in nanoseconds, 0 for no limit
+  private long timeBudget = 0;
+  // The iterations without improvement that stop a run, 0 for no limit
+  private int stagnationLimit = 0;
+  // The iterations completed by the last run
+  private int iterationsCompleted = 0;
+  // The grade of the best solution after every iteration of the last run
+  private double[] convergenceTrace = new double[0];
+  // The pheromones and the best solution kept between the runs, can be null
+  private PheromoneMemory<E> pheromoneMemory = null;
+  // The remembered best solution the first ant of a run follows
+  private List<E> guide = null;
+
+  /**
+   * A ACO SS algorithm is constructed for the given constraints and minimize
+   * function. The parameters are the same as the ones of
+   * {@link AntColonyOptimizationSS}.
+   */
+  public IndexedAntColonyOptimizationSS (List<E> workSet,
+                                         Constraints<E> constraints,
+                                         ObjectiveMinFunction<E> minFunction,
+                                         double a, double b, double evapRate,
+                                         int antNum, double tmin, double tmax)
+  {
+    this.workSet = workSet;
+    this.constraints = constraints;
+    this.minFunction = minFunction;
+    this.a = a;
+    this.b = b;
+    this.evapRate = evapRate;
+    this.antNum = antNum;
+    this.tmin = tmin;
+    this.tmax = tmax;
+  }
+
+  /**
+   * This function executes the algorithm and returns the chosen subset. With a
+   * time budget or a stagnation limit it runs in the same anytime mode as
+   * {@link AntColonyOptimizationSS#execute()}.
+   */
+  @Override
+  public List<E> execute ()
+  {
+    AnytimeRun<E> run = new AnytimeRun<E>(timeBudget, stagnationLimit);
+    long baseSeed = seed != null ? seed : 0;
+    initializeIndexes();
+    initializePheromones();
+    guide =
+      pheromoneMemory != null ? pheromoneMemory.recallBestSolution(workSet)
+                             : null;
+
+    List<E> bestSolution = new ArrayList<E>(0);
+    for (int i = 0; i < maxIterations; i++) {
+      updateWeights();
+      List<E> iterationBest = null;
+      double iterationGrade = 0;
+      for (int ant = 0; ant < antNum; ant++) {
+        // abandon the iteration when the time runs out
+        if (run.isExpired()) {
+          iterationBest = null;
+          break;
+        }
+        Random random =
+          seed == null ? rng
+                      : new Random(AntColonyOptimizationSS
+                              .streamSeed(baseSeed, (long) i * antNum + ant));
+        IncrementalObjective.Accumulator<E> accumulator = createAccumulator();
+        List<E> solution =
+          constructSolution(random, accumulator, i == 0 && ant == 0 ? guide
+                                                                   : null);
+        double grade =
+          accumulator != null ? accumulator.grade() : minFunction
+                  .gradeSolution(solution);
+        if (iterationBest == null || grade < iterationGrade) {
+          iterationBest = solution;
+          iterationGrade = grade;
+        }
+      }
+      if (iterationBest == null)
+        break;
+      bestSolution = iterationBest;
+      updatePheromones(bestSolution, iterationGrade);
+      if (!run.complete(bestSolution, iterationGrade))
+        break;
+    }
+
+    iterationsCompleted = run.getIterations();
+    convergenceTrace = run.getTrace();
+    if (pheromoneMemory != null) {
+      for (int i = 0; i < items.size(); i++) {
+        pheromoneMemory.store(items.get(i), pheromones[i]);
+      }
+      pheromoneMemory.storeBestSolution(run.getBestSolution() != null ? run
+              .getBestSolution() : bestSolution);
+    }
+    if ((timeBudget > 0 || stagnationLimit > 0 || pheromoneMemory != null)
+        && run.getBestSolution() != null)
+      return run.getBestSolution();
+    return bestSolution;
+  }
+
+  /**
+   * @return a new accumulator if the objective function is incremental or
+   *         else null
+   */
+  private IncrementalObjective.Accumulator<E> createAccumulator ()
+  {
+    if (minFunction instanceof IncrementalObjective)
+      return ((IncrementalObjective<E>) minFunction).createAccumulator();
+    return null;
+  }
+
+  /**
+   * Maps the working set to indexes and grades the local attractiveness of
+   * every item.
+   */
+  void initializeIndexes ()
+  {
+    indexes.clear();
+    items.clear();
+    for (E item: workSet) {
+      if (!indexes.containsKey(item)) {
+        indexes.put(item, items.size());
+        items.add(item);
+      }
+    }
+
+    int n = items.size();
+    pheromones = new double[n];
+    attractiveness = new double[n];
+    weights = new double[n];
+    candidateIndexes = new int[n];
+    cumulativeWeights = new double[n];
+    candidate = new boolean[n];
+    sampler = new FenwickSampler(n);
+    for (int i = 0; i < n; i++) {
+      attractiveness[i] = pow(1.0 / minFunction.gradeItem(items.get(i)), b);
+    }
+  }
+
+  /**
+   * This function initializes all the pheromones. With a pheromone memory of
+   * a previous run they start from the remembered ones.
+   */
+  void initializePheromones ()
+  {
+    if (pheromoneMemory != null && !pheromoneMemory.isEmpty()) {
+      for (int i = 0; i < pheromones.length; i++) {
+        pheromones[i] = pheromoneMemory.recall(items.get(i), tmin, tmax);
+      }
+      return;
+    }
+    for (int i = 0; i < pheromones.length; i++) {
+      pheromones[i] = tmax;
+    }
+  }
+
+  /**
+   * Calculates the weight of every item from its pheromone.
+   */
+  void updateWeights ()
+  {
+    for (int i = 0; i < weights.length; i++) {
+      double pheromone = a == 1 ? pheromones[i] : pow(pheromones[i], a);
+      weights[i] = pheromone * attractiveness[i];
+    }
+  }
+
+  /**
+   * Constructs a random solution for one ant
+   * 
+   * @return the constructed solution
+   */
+  List<E> constructSolution (Random random)
+  {
+    return constructSolution(random, (IncrementalObjective.Accumulator<E>) null);
+  }
+
+  /**
+   * Constructs a random solution for one ant and adds its items to the
+   * accumulator if there is one
+   * 
+   * @return the constructed solution
+   */
+  List<E> constructSolution (Random random,
+                             IncrementalObjective.Accumulator<E> accumulator)
+  {
+    return constructSolution(random, accumulator, null);
+  }
+
+  /**
+   * Constructs a solution for one ant that chooses the items of the guide
+   * while the constraints allow it and then chooses randomly
+   * 
+   * @param guide
+   *          the items to choose first in their order, can be null
+   * @return the constructed solution
+   */
+  List<E> constructSolution (Random random,
+                             IncrementalObjective.Accumulator<E> accumulator,
+                             List<E> guide)
+  {
+    if (constraints instanceof IncrementalConstraints)
+      return constructSolution(random, (IncrementalConstraints<E>) constraints,
+                               accumulator, guide);
+
+    List<E> solution = new ArrayList<E>();
+    List<E> pending = pending(guide);
+
+    // randomly add the first producer to the solution
+    solution.add(first(random, guide));
+    if (accumulator != null)
+      accumulator.add(solution.get(0));
+
+    List<E> candidates = constraints.initializeCandidates(solution);
+    while (candidates.size() != 0) {
+      int count = candidates.size();
+      if (count > candidateIndexes.length) {
+        // the candidates can repeat equal items of the working set
+        candidateIndexes = new int[count];
+        cumulativeWeights = new double[count];
+      }
+      boolean guided = pending != null && !pending.isEmpty();
+      double sum = 0;
+      for (int i = 0; i < count; i++) {
+        int index = indexes.get(candidates.get(i));
+        candidateIndexes[i] = index;
+        sum += weights[index];
+        cumulativeWeights[i] = sum;
+        if (guided)
+          candidate[index] = true;
+      }
+      int choice = -1;
+      if (guided) {
+        choice = guidedChoice(pending);
+        for (int i = 0; i < count; i++) {
+          candidate[candidateIndexes[i]] = false;
+        }
+      }
+      if (choice < 0)
+        choice = select(random.nextDouble() * sum, count);
+      E item = items.get(candidateIndexes[choice]);
+      solution.add(item);
+      if (accumulator != null)
+        accumulator.add(item);
+      candidates = constraints.updateCandidates(solution, candidates);
+    }
+    return solution;
+  }
+
+  /**
+   * Constructs a random solution for one ant keeping the candidates in the
+   * sampler
+   * 
+   * @return the constructed solution
+   */
+  List<E> constructSolution (Random random,
+                             IncrementalConstraints<E> constraints,
+                             IncrementalObjective.Accumulator<E> accumulator)
+  {
+    return constructSolution(random, constraints, accumulator, null);
+  }
+
+  /**
+   * Constructs a solution for one ant keeping the candidates in the sampler
+   * and choosing the items of the guide while the constraints allow it
+   * 
+   * @return the constructed solution
+   */
+  List<E> constructSolution (Random random,
+                             IncrementalConstraints<E> constraints,
+                             IncrementalObjective.Accumulator<E> accumulator,
+                             List<E> guide)
+  {
+    List<E> solution = new ArrayList<E>();
+    List<E> pending = pending(guide);
+
+    // randomly add the first producer to the solution
+    solution.add(first(random, guide));
+    if (accumulator != null)
+      accumulator.add(solution.get(0));
+
+    sampler.clear();
+    for (E candidate: constraints.initializeCandidates(solution)) {
+      int index = indexes.get(candidate);
+      sampler.put(index, weights[index]);
+    }
+    sampler.build();
+
+    while (sampler.size() != 0) {
+      int chosen = pending != null ? guidedSample(pending) : -1;
+      if (chosen < 0)
+        chosen = sampler.sample(random.nextDouble());
+      sampler.remove(chosen);
+      E item = items.get(chosen);
+      solution.add(item);
+      if (accumulator != null)
+        accumulator.add(item);
+
+      removed.clear();
+      constraints.updateCandidates(solution, item, removed);
+      for (E candidate: removed) {
+        sampler.remove(indexes.get(candidate));
+      }
+    }
+    return solution;
+  }
+
+  /**
+   * @return the first item of the guide or else a random item
+   */
+  private E first (Random random, List<E> guide)
+  {
+    if (guide != null && !guide.isEmpty())
+      return guide.get(0);
+    return workSet.get(random.nextInt(workSet.size()));
+  }
+
+  /**
+   * @return the items of the guide after the first, null without a guide
+   */
+  private List<E> pending (List<E> guide)
+  {
+    if (guide == null || guide.size() < 2)
+      return null;
+    return new LinkedList<E>(guide.subList(1, guide.size()));
+  }
+
+  /**
+   * Removes the first pending item that is a candidate
+   * 
+   * @return the position of the item in the candidates or -1 if none is
+   */
+  private int guidedChoice (List<E> pending)
+  {
+    for (Iterator<E> it = pending.iterator(); it.hasNext();) {
+      int index = indexes.get(it.next());
+      if (candidate[index]) {
+        it.remove();
+        int i = 0;
+        while (candidateIndexes[i] != index)
+          i++;
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Removes the first pending item that is in the sampler
+   * 
+   * @return the index of the item or -1 if none is
+   */
+  private int guidedSample (List<E> pending)
+  {
+    for (Iterator<E> it = pending.iterator(); it.hasNext();) {
+      int index = indexes.get(it.next());
+      if (sampler.contains(index)) {
+        it.remove();
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the first of the candidates whose cumulative weight reaches the
+   *         value
+   */
+  private int select (double value, int count)
+  {
+    for (int i = 0; i < count - 1; i++) {
+      if (value <= cumulativeWeights[i])
+        return i;
+    }
+    return count - 1;
+  }
+
+  /**
+   * This function takes the best solutions and updates all the pheromone of
+   * the working set.
+   */
+  void updatePheromones (List<E> bestSolution, double bestValue)
+  {
+    boolean[] best = new boolean[pheromones.length];
+    for (E item: bestSolution) {
+      best[indexes.get(item)] = true;
+    }
+    for (int i = 0; i < pheromones.length; i++) {
+      double ifbest = best[i] ? 1 / bestValue : 0;
+      double newPheromone = pheromones[i] * (1 - evapRate) + ifbest;
+      pheromones[i] = min(max(newPheromone, tmin), tmax);
+    }
+  }
+
+  /**
+   * @return the index of the item or -1 if it isn't in the working set
+   */
+  public int indexOf (E item)
+  {
+    Integer index = indexes.get(item);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * @return a copy of the pheromones by the index of the items
+   */
+  public double[] getPheromones ()
+  {
+    return pheromones.clone();
+  }
+
+  /**
+   * @return the workSet
+   */
+  public List<E> getWorkSet ()
+  {
+    return workSet;
+  }
+
+  /**
+   * @return the constraints
+   */
+  public Constraints<E> getConstraints ()
+  {
+    return constraints;
+  }
+
+  /**
+   * @return the minFunction
+   */
+  public ObjectiveMinFunction<E> getMinFunction ()
+  {
+    return minFunction;
+  }
+
+  /**
+   * @return the rng
+   */
+  public Random getRng ()
+  {
+    return rng;
+  }
+
+  /**
+   * @param rng
+   *          the rng to set
+   */
+  public void setRng (Random rng)
+  {
+    this.rng = rng;
+  }
+
+  /**
+   * @return the seed of the random streams of the ants, null if they use the
+   *         shared random generator
+   */
+  public Long getSeed ()
+  {
+    return seed;
+  }
+
+  /**
+   * Gives every ant its own random stream derived from the seed, the same
+   * streams as {@link AntColonyOptimizationSS#setSeed(Long)}.
+   * 
+   * @param seed
+   *          the seed, null to go back to the shared random generator
+   */
+  public void setSeed (Long seed)
+  {
+    this.seed = seed;
+  }
+
+  /**
+   * @return the time a run may take in nanoseconds, 0 for no limit
+   */
+  public long getTimeBudget ()
+  {
+    return timeBudget;
+  }
+
+  /**
+   * @param timeBudget
+   *          the time a run may take in nanoseconds, 0 for no limit
+   */
+  public void setTimeBudget (long timeBudget)
+  {
+    if (timeBudget < 0)
+      throw new IllegalArgumentException("Negative time budget");
+    this.timeBudget = timeBudget;
+  }
+
+  /**
+   * @return the iterations without improvement that stop a run, 0 for no
+   *         limit
+   */
+  public int getStagnationLimit ()
+  {
+    return stagnationLimit;
+  }
+
+  /**
+   * @param stagnationLimit
+   *          the iterations without improvement that stop a run, 0 for no
+   *          limit
+   */
+  public void setStagnationLimit (int stagnationLimit)
+  {
+    if (stagnationLimit < 0)
+      throw new IllegalArgumentException("Negative stagnation limit");
+    this.stagnationLimit = stagnationLimit;
+  }
+
+  /**
+   * @return the number of iterations the last run completed
+   */
+  public int getIterationsCompleted ()
+  {
+    return iterationsCompleted;
+  }
+
+  /**
+   * @return the grade of the best solution so far after every completed
+   *         iteration of the last run
+   */
+  public double[] getConvergenceTrace ()
+  {
+    return convergenceTrace.clone();
+  }
+
+  /**
+   * @return the memory of the pheromones between the runs, null if there is
+   *         none
+   */
+  public PheromoneMemory<E> getPheromoneMemory ()
+  {
+    return pheromoneMemory;
+  }
+
+  /**
+   * Keeps the pheromones and the best solution of every run in the memory
+   * and starts the next run from them. A run with a memory returns the best
+   * solution of all its iterations.
+   * 
+   * @param pheromoneMemory
+   *          the memory, null to start every run cold
+   */
+  public void setPheromoneMemory (PheromoneMemory<E> pheromoneMemory)
+  {
+    this.pheromoneMemory = pheromoneMemory;
+  }
+
+  /**
+   * @return the maxIterations
+   */
+  public int getMaxIterations ()
+  {
+    return maxIterations;
+  }
+
+  /**
+   * @param maxIterations
+   *          the maxIterations to set
+   */
+  public void setMaxIterations (int maxIterations)
+  {
+    this.maxIterations = maxIterations;
+  }
+}
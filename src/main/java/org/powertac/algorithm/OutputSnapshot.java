@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.powertac.common.WeatherReport;
+import org.powertac.producer.Producer;
+
+/**
+ * This class keeps the power output of every producer of a working set for
+ * one weather report. It is computed once for a run of the algorithm and
+ * shared by the constraints and the objective function, so that
+ * {@link Producer#getOutput(WeatherReport)}, which is expensive and changes
+ * the state of some producers, is called once per producer and run. The
+ * snapshot doesn't change after it is computed so it can be read by many
+ * threads.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public final class OutputSnapshot
+{
+  // The power output of every producer
+  private final Map<Producer, Double> outputs;
+  // The weather report of the outputs
+  private final WeatherReport report;
+
+  private OutputSnapshot (Map<Producer, Double> outputs, WeatherReport report)
+  {
+    this.outputs = outputs;
+    this.report = report;
+  }
+
+  /**
+   * Computes the outputs of the producers one after the other.
+   * 
+   * @param workSet
+   *          the producers
+   * @param report
+   *          the weather report of the run
+   * @return the snapshot
+   */
+  public static OutputSnapshot compute (List<Producer> workSet,
+                                        WeatherReport report)
+  {
+    return compute(workSet, report, null);
+  }
+
+  /**
+   * Computes the outputs of the producers in parallel. Every producer is
+   * asked once, by one task, so the producers don't have to be thread-safe
+   * but they must not share state with each other.
+   * 
+   * @param workSet
+   *          the producers
+   * @param report
+   *          the weather report of the run
+   * @param executor
+   *          the executor of the tasks, null to compute them on this thread
+   * @return the snapshot
+   */
+  public static OutputSnapshot compute (List<Producer> workSet,
+                                        final WeatherReport report,
+                                        ExecutorService executor)
+  {
+    Map<Producer, Double> outputs = new HashMap<Producer, Double>();
+    List<Producer> producers = new ArrayList<Producer>();
+    for (Producer prod: workSet) {
+      if (!outputs.containsKey(prod)) {
+        outputs.put(prod, null);
+        producers.add(prod);
+      }
+    }
+
+    if (executor == null) {
+      for (Producer prod: producers) {
+        outputs.put(prod, prod.getOutput(report));
+      }
+      return new OutputSnapshot(outputs, report);
+    }
+
+    List<Callable<Double>> tasks =
+      new ArrayList<Callable<Double>>(producers.size());
+    for (final Producer prod: producers) {
+      tasks.add(new Callable<Double>() {
+        @Override
+        public Double call ()
+        {
+          return prod.getOutput(report);
+        }
+      });
+    }
+    try {
+      List<Future<Double>> results = executor.invokeAll(tasks);
+      for (int i = 0; i < producers.size(); i++) {
+        outputs.put(producers.get(i), results.get(i).get());
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+    return new OutputSnapshot(outputs, report);
+  }
+
+  /**
+   * Creates a snapshot of outputs that are already known, for example the
+   * outputs the producers computed for the last timeslot.
+   * 
+   * @param outputs
+   *          the output of every producer
+   * @param report
+   *          the weather report of the outputs, can be null
+   * @return the snapshot
+   */
+  public static OutputSnapshot of (Map<Producer, Double> outputs,
+                                   WeatherReport report)
+  {
+    Map<Producer, Double> copy = new HashMap<Producer, Double>(outputs);
+    if (copy.containsValue(null))
+      throw new IllegalArgumentException("Missing producer output");
+    return new OutputSnapshot(copy, report);
+  }
+
+  /**
+   * @return the power output of the producer
+   */
+  public double getOutput (Producer prod)
+  {
+    Double output = outputs.get(prod);
+    if (output == null)
+      throw new IllegalArgumentException("The producer isn't in the snapshot");
+    return output;
+  }
+
+  /**
+   * @return true if the snapshot has the output of the producer
+   */
+  public boolean contains (Producer prod)
+  {
+    return outputs.containsKey(prod);
+  }
+
+  /**
+   * @return the number of producers
+   */
+  public int size ()
+  {
+    return outputs.size();
+  }
+
+  /**
+   * @return the weather report of the outputs
+   */
+  public WeatherReport getReport ()
+  {
+    return report;
+  }
+}
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.powertac.producer.Producer;
+
+/**
+ * <p>
+ * This class carries the pheromones and the best solution of an aco algorithm
+ * from one run to the next, so that a run on a working set like the previous
+ * one, for example of the next timeslot, doesn't start all over from the
+ * maximum pheromone. The items are remembered by a key, the customer id for
+ * the producers, so another instance of an item finds its pheromone.
+ * </p>
+ * <p>
+ * At the start of a run every pheromone decays toward the maximum by a share
+ * of its distance from it, so that the memory of the older runs fades. With a
+ * decay of 1 every run starts cold. The items that the memory doesn't know
+ * start at the maximum. The first ant of the run follows the remembered best
+ * solution, as far as the constraints allow, and the run returns the best
+ * solution of all its iterations instead of the one of its last.
+ * </p>
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public final class PheromoneMemory<E>
+{
+  /**
+   * Maps an item to the key it is remembered by
+   */
+  public interface Key<E>
+  {
+    Object keyOf (E item);
+  }
+
+  /**
+   * Remembers the producers by their customer id
+   */
+  public static final Key<Producer> PRODUCER_ID = new Key<Producer>() {
+    @Override
+    public Object keyOf (Producer item)
+    {
+      return item.getCustId();
+    }
+  };
+
+  // The key of the items, null to use the items
+  private Key<E> key;
+  // The share of the distance from the maximum a pheromone recovers
+  private double decay = 0;
+  // The pheromones at the end of the last run by their key
+  private Map<Object, Double> pheromones = new HashMap<Object, Double>();
+  // The keys of the best solution of the last run in their order
+  private List<Object> bestSolution = new ArrayList<Object>(0);
+  // The number of runs stored
+  private int runs = 0;
+
+  /**
+   * Constructs a memory of the items themselves
+   */
+  public PheromoneMemory ()
+  {
+    this(null);
+  }
+
+  /**
+   * Constructs a memory of the items by their key
+   * 
+   * @param key
+   *          the key of the items, null to use the items
+   */
+  public PheromoneMemory (Key<E> key)
+  {
+    this.key = key;
+  }
+
+  /**
+   * Constructs a memory of the items by their key with a decay
+   * 
+   * @param key
+   *          the key of the items, null to use the items
+   * @param decay
+   *          the share of the distance from the maximum a pheromone recovers
+   *          before a run
+   */
+  public PheromoneMemory (Key<E> key, double decay)
+  {
+    this(key);
+    setDecay(decay);
+  }
+
+  private Object keyOf (E item)
+  {
+    return key == null ? item : key.keyOf(item);
+  }
+
+  /**
+   * Returns the pheromone a run starts with for the item: the remembered one
+   * after its decay or the maximum if the item isn't known.
+   */
+  public double recall (E item, double tmin, double tmax)
+  {
+    Double pheromone = pheromones.get(keyOf(item));
+    if (pheromone == null)
+      return tmax;
+    double result = pheromone + decay * (tmax - pheromone);
+    return Math.min(Math.max(result, tmin), tmax);
+  }
+
+  /**
+   * Returns the items of the working set that were in the best solution of
+   * the last run, in the order they were chosen
+   */
+  public List<E> recallBestSolution (List<E> workSet)
+  {
+    List<E> result = new ArrayList<E>();
+    if (bestSolution.isEmpty())
+      return result;
+    Map<Object, E> items = new HashMap<Object, E>();
+    for (E item: workSet) {
+      items.put(keyOf(item), item);
+    }
+    for (Object k: bestSolution) {
+      E item = items.get(k);
+      if (item != null)
+        result.add(item);
+    }
+    return result;
+  }
+
+  /**
+   * Stores the pheromone of an item at the end of a run
+   */
+  void store (E item, double pheromone)
+  {
+    pheromones.put(keyOf(item), pheromone);
+  }
+
+  /**
+   * Stores the best solution at the end of a run
+   */
+  void storeBestSolution (List<E> solution)
+  {
+    bestSolution = new ArrayList<Object>(solution.size());
+    for (E item: solution) {
+      bestSolution.add(keyOf(item));
+    }
+    runs++;
+  }
+
+  /**
+   * @return true if no run has been stored
+   */
+  public boolean isEmpty ()
+  {
+    return runs == 0;
+  }
+
+  /**
+   * @return true if the pheromone of the item is remembered
+   */
+  public boolean contains (E item)
+  {
+    return pheromones.containsKey(keyOf(item));
+  }
+
+  /**
+   * @return the number of items whose pheromone is remembered
+   */
+  public int size ()
+  {
+    return pheromones.size();
+  }
+
+  /**
+   * @return the number of runs stored
+   */
+  public int getRuns ()
+  {
+    return runs;
+  }
+
+  /**
+   * Forgets all the runs
+   */
+  public void clear ()
+  {
+    pheromones.clear();
+    bestSolution = new ArrayList<Object>(0);
+    runs = 0;
+  }
+
+  /**
+   * @return the share of the distance from the maximum a pheromone recovers
+   *         before a run
+   */
+  public double getDecay ()
+  {
+    return decay;
+  }
+
+  /**
+   * @param decay
+   *          the share of the distance from the maximum a pheromone recovers
+   *          before a run, from 0 to keep the pheromones to 1 to forget them
+   */
+  public void setDecay (double decay)
+  {
+    if (decay < 0 || decay > 1)
+      throw new IllegalArgumentException("The decay must be from 0 to 1");
+    this.decay = decay;
+  }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * This class chooses the solver of a subset selection problem by the number
+ * of distinct items of the working set. The small working sets are solved
+ * exactly by {@link BranchAndBoundSS}. The medium ones are solved by
+ * {@link IndexedAntColonyOptimizationSS} and {@link GreedySS} and the better
+ * solution is kept, since the greedy one is often as good for costs that add
+ * up and takes a fraction of the time. The large ones are only solved by
+ * {@link GreedySS}.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public final class SolverSelector
+{
+  // The largest working set that is searched exactly
+  public static final int EXACT_LIMIT = 24;
+  // The largest working set that is solved by the ants
+  public static final int ACO_LIMIT = 400;
+
+  // The parameters of the ants, the same as the dispatch defaults
+  static final double A = 1;
+  static final double B = 1;
+  static final double EVAP_RATE = 0.1;
+  static final int ANT_NUM = 10;
+  static final double TMIN = 0.1;
+  static final double TMAX = 10;
+
+  private SolverSelector ()
+  {
+  }
+
+  /**
+   * Returns the solver for the working set with the default limits.
+   */
+  public static <E> SubsetSelection<E>
+    select (List<E> workSet, Constraints<E> constraints,
+            ObjectiveMinFunction<E> minFunction)
+  {
+    return select(workSet, constraints, minFunction, EXACT_LIMIT, ACO_LIMIT);
+  }
+
+  /**
+   * Returns the solver for the working set.
+   * 
+   * @param exactLimit
+   *          The largest working set that is searched exactly
+   * @param acoLimit
+   *          The largest working set that is solved by the ants
+   */
+  public static <E> SubsetSelection<E>
+    select (List<E> workSet, Constraints<E> constraints,
+            ObjectiveMinFunction<E> minFunction, int exactLimit, int acoLimit)
+  {
+    int size = new HashSet<E>(workSet).size();
+    if (size <= exactLimit)
+      return new BranchAndBoundSS<E>(workSet, constraints, minFunction);
+    GreedySS<E> greedy = new GreedySS<E>(workSet, constraints, minFunction);
+    if (size <= acoLimit)
+      return new BestOf<E>(minFunction, greedy,
+                           new IndexedAntColonyOptimizationSS<E>(workSet,
+                                                                 constraints,
+                                                                 minFunction,
+                                                                 A, B,
+                                                                 EVAP_RATE,
+                                                                 ANT_NUM,
+                                                                 TMIN, TMAX));
+    return greedy;
+  }
+
+  /**
+   * Executes two solvers and returns the solution with the lower grade
+   */
+  static final class BestOf<E> implements SubsetSelection<E>
+  {
+    private ObjectiveMinFunction<E> minFunction;
+    private SubsetSelection<E> first;
+    private SubsetSelection<E> second;
+
+    BestOf (ObjectiveMinFunction<E> minFunction, SubsetSelection<E> first,
+            SubsetSelection<E> second)
+    {
+      this.minFunction = minFunction;
+      this.first = first;
+      this.second = second;
+    }
+
+    @Override
+    public List<E> execute ()
+    {
+      List<E> firstSolution = first.execute();
+      List<E> secondSolution = second.execute();
+      if (firstSolution.isEmpty())
+        return secondSolution;
+      if (secondSolution.isEmpty()
+          || minFunction.gradeSolution(firstSolution) <= minFunction
+                  .gradeSolution(secondSolution))
+        return firstSolution;
+      return secondSolution;
+    }
+
+    SubsetSelection<E> getFirst ()
+    {
+      return first;
+    }
+
+    SubsetSelection<E> getSecond ()
+    {
+      return second;
+    }
+  }
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.Math.abs;
+
+import org.powertac.common.WeatherReport;
+import org.powertac.producer.Producer;
+
+/**
+ * This class implements the same energy constraint as
+ * {@link EnergyConstraint} but asks the producers for their power only once,
+ * when it is constructed, so it must be constructed for every run of the
+ * algorithm. The producers are kept sorted by the magnitude of their power.
+ * When all the producers have power of the same sign the solution power only
+ * grows with every choice, so the candidates that don't fit anymore are always
+ * the largest ones and are dropped by advancing a pointer, which is amortized
+ * O(1) per choice.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class SortedEnergyConstraint implements IncrementalConstraints<Producer>
+{
+  // The producers sorted by decreasing magnitude of power
+  private Producer[] sorted;
+  // The power of the sorted producers
+  private double[] sortedPower;
+  // The power of every producer
+  private Map<Producer, Double> powers = new HashMap<Producer, Double>();
+  // The magnitude of the energy threshold
+  private double limit;
+  // True if the power of all producers has the same sign
+  private boolean monotone = true;
+
+  // The power of the solution under construction
+  private double solutionPower = 0;
+  // The first sorted producer that hasn't been dropped
+  private int next = 0;
+
+  /**
+   * Constructs the energy constraint for one run of the algorithm.
+   * 
+   * @param workSet
+   *          The set of Producers on which the algorithm is run
+   * @param energyThreshold
+   *          The energy threshold. Must be negative.
+   * @param report
+   *          The weather report for the time when the algorithm is run.
+   */
+  public SortedEnergyConstraint (List<Producer> workSet,
+                                 double energyThreshold, WeatherReport report)
+  {
+    this(workSet, energyThreshold, OutputSnapshot.compute(workSet, report));
+  }
+
+  /**
+   * Constructs the energy constraint on the outputs of a snapshot.
+   * 
+   * @param workSet
+   *          The set of Producers on which the algorithm is run
+   * @param energyThreshold
+   *          The energy threshold. Must be negative.
+   * @param snapshot
+   *          The outputs of the producers for the run.
+   */
+  public SortedEnergyConstraint (List<Producer> workSet,
+                                 double energyThreshold,
+                                 OutputSnapshot snapshot)
+  {
+    for (Producer prod: workSet) {
+      if (!powers.containsKey(prod))
+        powers.put(prod, snapshot.getOutput(prod));
+    }
+    limit = abs(energyThreshold);
+
+    sorted = powers.keySet().toArray(new Producer[powers.size()]);
+    Arrays.sort(sorted, new Comparator<Producer>() {
+      @Override
+      public int compare (Producer p1, Producer p2)
+      {
+        return Double.compare(abs(powers.get(p2)), abs(powers.get(p1)));
+      }
+    });
+    sortedPower = new double[sorted.length];
+    boolean negative = false;
+    boolean positive = false;
+    for (int i = 0; i < sorted.length; i++) {
+      sortedPower[i] = powers.get(sorted[i]);
+      negative |= sortedPower[i] < 0;
+      positive |= sortedPower[i] > 0;
+    }
+    monotone = !(negative && positive);
+  }
+
+  @Override
+  public List<Producer> initializeCandidates (List<Producer> solution)
+  {
+    solutionPower = 0;
+    for (Producer prod: solution) {
+      solutionPower += getProducerPower(prod);
+    }
+    next = 0;
+    dropInfeasible(null);
+
+    List<Producer> candidates = new ArrayList<Producer>(sorted.length - next);
+    for (int i = next; i < sorted.length; i++) {
+      if (fits(sortedPower[i]) && sorted[i] != solution.get(0))
+        candidates.add(sorted[i]);
+    }
+    return candidates;
+  }
+
+  @Override
+  public List<Producer> updateCandidates (List<Producer> solution,
+                                          List<Producer> candidates)
+  {
+    Producer chosen = solution.get(solution.size() - 1);
+    solutionPower += getProducerPower(chosen);
+    candidates.remove(chosen);
+
+    if (monotone) {
+      // the candidates keep the sorted order so the ones that don't fit are
+      // at the start
+      int count = 0;
+      while (count < candidates.size()
+             && !fits(getProducerPower(candidates.get(count))))
+        count++;
+      candidates.subList(0, count).clear();
+    }
+    else {
+      List<Producer> remaining = new ArrayList<Producer>(candidates.size());
+      for (Producer prod: candidates) {
+        if (fits(getProducerPower(prod)))
+          remaining.add(prod);
+      }
+      candidates = remaining;
+    }
+    return candidates;
+  }
+
+  @Override
+  public void updateCandidates (List<Producer> solution, Producer chosen,
+                                List<Producer> removed)
+  {
+    solutionPower += getProducerPower(chosen);
+    dropInfeasible(removed);
+  }
+
+  /*
+   * Advances the pointer past the producers that don't fit and adds them to
+   * removed
+   */
+  private void dropInfeasible (List<Producer> removed)
+  {
+    if (!monotone) {
+      for (int i = 0; i < sorted.length; i++) {
+        if (removed != null && !fits(sortedPower[i]))
+          removed.add(sorted[i]);
+      }
+      return;
+    }
+    while (next < sorted.length && !fits(sortedPower[next])) {
+      if (removed != null)
+        removed.add(sorted[next]);
+      next++;
+    }
+  }
+
+  private boolean fits (double power)
+  {
+    return abs(power + solutionPower) <= limit;
+  }
+
+  /**
+   * This function returns the power output of the specified producer
+   * 
+   * @param prod
+   *          The producer whose power to return
+   * @return The producer's power
+   */
+  protected double getProducerPower (Producer prod)
+  {
+    return powers.get(prod);
+  }
+}
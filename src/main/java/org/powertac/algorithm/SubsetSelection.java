@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import java.util.List;
+
+/**
+ * A solver of the subset selection problem. It chooses the subset of a
+ * working set that minimizes an {@link ObjectiveMinFunction} and follows the
+ * {@link Constraints}. The solvers get the working set, the constraints and
+ * the objective function when they are constructed, so the callers can choose
+ * one with {@link SolverSelector} and execute it without knowing which.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public interface SubsetSelection<E>
+{
+  /**
+   * This function executes the solver and returns the chosen subset.
+   */
+  List<E> execute ();
+}
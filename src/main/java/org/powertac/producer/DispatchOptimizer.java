@@ -0,0 +1,430 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.powertac.algorithm.EnrgEmsMinFunction;
+import org.powertac.algorithm.IndexedAntColonyOptimizationSS;
+import org.powertac.algorithm.OutputSnapshot;
+import org.powertac.algorithm.PheromoneMemory;
+import org.powertac.algorithm.SortedEnergyConstraint;
+import org.powertac.producer.ProducerMetrics.Histogram;
+
+/**
+ * Selects the producers that should run to meet a target energy at the lowest
+ * cost and emissions with the ant colony optimization. The outputs of the
+ * producers are the ones they computed in the last timeslot, so the
+ * producers, whose output may change their state, aren't asked again. A run
+ * takes no more than the time budget, after the first iteration. Its
+ * pheromones start from the ones of the previous run, kept by the customer id
+ * of the producers, and its first ant follows the previous selection.
+ * The selection is returned to the caller, the producers aren't curtailed
+ * by the optimizer.
+ * 
+ * The optimizer keeps the solve time and the distance from the target of its
+ * runs. It is used by one thread.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class DispatchOptimizer
+{
+  static final private Logger log = Logger.getLogger(DispatchOptimizer.class
+          .getName());
+
+  private static final long DEFAULT_TIME_BUDGET = 100;
+  private static final double DEFAULT_PHEROMONE_DECAY = 0.05;
+  private static final long NANOS_IN_MILLI = 1000000;
+  // The grade of the producers without cost and emissions, a zero grade
+  // would make them infinitely attractive
+  private static final double MIN_ITEM_GRADE = 1e-6;
+
+  // The parameters of the algorithm
+  private double a = 1;
+  private double b = 1;
+  private double evapRate = 0.1;
+  private int antNum = 10;
+  private double tmin = 0.1;
+  private double tmax = 10;
+  private int maxIterations = 20;
+
+  // The weights of the objective function
+  private double costWeight = 1;
+  private double emissionWeight = 1;
+  private double limitWeight = 1;
+
+  // The time a run may take in milliseconds
+  private long timeBudget = DEFAULT_TIME_BUDGET;
+
+  // Start the pheromones and the first ant from the previous run
+  private boolean warmStart = true;
+
+  // The pheromones and the selection of the previous runs
+  private PheromoneMemory<Producer> memory =
+    new PheromoneMemory<Producer>(PheromoneMemory.PRODUCER_ID,
+                                  DEFAULT_PHEROMONE_DECAY);
+
+  // The result of the last run
+  private Result lastResult = null;
+
+  // The solve times of the runs
+  private Histogram solveTimes = new Histogram();
+
+  // The sum of the relative distances of the runs from their target
+  private double targetGapSum = 0;
+
+  /**
+   * Selects the producers to run.
+   * 
+   * @param producers
+   *          the producers to choose from
+   * @param target
+   *          the target energy in kWh, negative like the production
+   * @return the selection
+   */
+  public Result optimize (List<Producer> producers, double target)
+  {
+    if (target >= 0)
+      throw new IllegalArgumentException("The target energy must be negative");
+    long start = System.nanoTime();
+
+    // only the producers that can produce something are candidates
+    Map<Producer, Double> outputs = new HashMap<Producer, Double>();
+    List<Producer> workSet = new ArrayList<Producer>();
+    for (Producer producer: producers) {
+      if (producer.getLastOutput() < 0 && !outputs.containsKey(producer)) {
+        outputs.put(producer, producer.getLastOutput());
+        workSet.add(producer);
+      }
+    }
+
+    List<Producer> selection = new ArrayList<Producer>(0);
+    double grade = 0;
+    int iterations = 0;
+    if (!workSet.isEmpty()) {
+      OutputSnapshot snapshot = OutputSnapshot.of(outputs, null);
+      SortedEnergyConstraint constraint =
+        new SortedEnergyConstraint(workSet, target, snapshot);
+      EnrgEmsMinFunction objective =
+        new DispatchObjective(target, costWeight, emissionWeight, limitWeight,
+                              snapshot, workSet);
+      IndexedAntColonyOptimizationSS<Producer> solver =
+        new IndexedAntColonyOptimizationSS<Producer>(workSet, constraint,
+                                                     objective, a, b,
+                                                     evapRate, antNum, tmin,
+                                                     tmax);
+      solver.setMaxIterations(maxIterations);
+      solver.setTimeBudget(timeBudget * NANOS_IN_MILLI);
+      if (warmStart)
+        solver.setPheromoneMemory(memory);
+      selection = solver.execute();
+      grade = objective.gradeSolution(selection);
+      iterations = solver.getIterationsCompleted();
+    }
+
+    double energy = 0;
+    for (Producer producer: selection)
+      energy += outputs.get(producer);
+    lastResult =
+      new Result(selection, target, energy, grade, iterations,
+                 System.nanoTime() - start);
+    solveTimes.record(lastResult.solveNanos);
+    targetGapSum += lastResult.getTargetGap();
+    log.debug(lastResult);
+    return lastResult;
+  }
+
+  /**
+   * Forgets the previous runs and the metrics, for a new game.
+   */
+  public void clear ()
+  {
+    memory.clear();
+    lastResult = null;
+    resetMetrics();
+  }
+
+  /**
+   * Forgets the metrics.
+   */
+  public void resetMetrics ()
+  {
+    solveTimes.reset();
+    targetGapSum = 0;
+  }
+
+  /**
+   * @return the result of the last run, null before the first
+   */
+  public Result getLastResult ()
+  {
+    return lastResult;
+  }
+
+  /**
+   * @return the solve times of the runs
+   */
+  public Histogram getSolveTimes ()
+  {
+    return solveTimes;
+  }
+
+  /**
+   * @return the mean relative distance of the runs from their target
+   */
+  public double getMeanTargetGap ()
+  {
+    long runs = solveTimes.getCount();
+    return runs == 0 ? 0 : targetGapSum / runs;
+  }
+
+  /**
+   * @return the time a run may take in milliseconds
+   */
+  public long getTimeBudget ()
+  {
+    return timeBudget;
+  }
+
+  /**
+   * @param timeBudget
+   *          the time a run may take in milliseconds, 0 for no limit
+   */
+  public void setTimeBudget (long timeBudget)
+  {
+    if (timeBudget < 0)
+      throw new IllegalArgumentException("Negative time budget");
+    this.timeBudget = timeBudget;
+  }
+
+  /**
+   * @return true if the runs start from the previous ones
+   */
+  public boolean isWarmStart ()
+  {
+    return warmStart;
+  }
+
+  /**
+   * @param warmStart
+   *          true to start the pheromones and the first ant from the
+   *          previous runs
+   */
+  public void setWarmStart (boolean warmStart)
+  {
+    this.warmStart = warmStart;
+  }
+
+  /**
+   * @return the share of the distance from the maximum the remembered
+   *         pheromones recover before a run
+   */
+  public double getPheromoneDecay ()
+  {
+    return memory.getDecay();
+  }
+
+  /**
+   * @param pheromoneDecay
+   *          the share of the distance from the maximum the remembered
+   *          pheromones recover before a run, from 0 to 1
+   */
+  public void setPheromoneDecay (double pheromoneDecay)
+  {
+    memory.setDecay(pheromoneDecay);
+  }
+
+  /**
+   * @return the pheromones and the selection of the previous runs
+   */
+  public PheromoneMemory<Producer> getPheromoneMemory ()
+  {
+    return memory;
+  }
+
+  /**
+   * @return the maximum number of iterations of a run
+   */
+  public int getMaxIterations ()
+  {
+    return maxIterations;
+  }
+
+  /**
+   * @param maxIterations
+   *          the maximum number of iterations of a run
+   */
+  public void setMaxIterations (int maxIterations)
+  {
+    this.maxIterations = maxIterations;
+  }
+
+  /**
+   * @return the number of ants of an iteration
+   */
+  public int getAntNum ()
+  {
+    return antNum;
+  }
+
+  /**
+   * @param antNum
+   *          the number of ants of an iteration
+   */
+  public void setAntNum (int antNum)
+  {
+    this.antNum = antNum;
+  }
+
+  /**
+   * Sets the weights of the cost, the emissions and the distance from the
+   * target of the objective function.
+   */
+  public void setWeights (double costWeight, double emissionWeight,
+                          double limitWeight)
+  {
+    this.costWeight = costWeight;
+    this.emissionWeight = emissionWeight;
+    this.limitWeight = limitWeight;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return String.format("dispatch n=%d mean=%.3f ms p99<%.3f ms, mean target "
+                             + "gap=%.4f", solveTimes.getCount(),
+                         solveTimes.getMean() / Histogram.NANOS_IN_MILLI,
+                         solveTimes.getPercentile(0.99)
+                                 / Histogram.NANOS_IN_MILLI,
+                         getMeanTargetGap());
+  }
+
+  /**
+   * The objective function with a minimum grade for the producers
+   */
+  private static class DispatchObjective extends EnrgEmsMinFunction
+  {
+    DispatchObjective (double limit, double costWeight,
+                       double emissionWeight, double limitWeight,
+                       OutputSnapshot snapshot, List<Producer> workSet)
+    {
+      super(limit, costWeight, emissionWeight, limitWeight, snapshot, workSet);
+    }
+
+    @Override
+    public double gradeItem (Producer item)
+    {
+      return Math.max(super.gradeItem(item), MIN_ITEM_GRADE);
+    }
+  }
+
+  /**
+   * The selection of one run
+   */
+  public static class Result
+  {
+    private List<Producer> selection;
+    private double target;
+    private double energy;
+    private double grade;
+    private int iterations;
+    private long solveNanos;
+
+    Result (List<Producer> selection, double target, double energy,
+            double grade, int iterations, long solveNanos)
+    {
+      this.selection = Collections.unmodifiableList(selection);
+      this.target = target;
+      this.energy = energy;
+      this.grade = grade;
+      this.iterations = iterations;
+      this.solveNanos = solveNanos;
+    }
+
+    /**
+     * @return the producers that should run
+     */
+    public List<Producer> getSelection ()
+    {
+      return selection;
+    }
+
+    /**
+     * @return the target energy
+     */
+    public double getTarget ()
+    {
+      return target;
+    }
+
+    /**
+     * @return the energy of the selected producers
+     */
+    public double getEnergy ()
+    {
+      return energy;
+    }
+
+    /**
+     * @return the grade of the selection by the objective function, lower is
+     *         better
+     */
+    public double getGrade ()
+    {
+      return grade;
+    }
+
+    /**
+     * @return the iterations the algorithm completed within the time budget
+     */
+    public int getIterations ()
+    {
+      return iterations;
+    }
+
+    /**
+     * @return the time the run took in nanoseconds
+     */
+    public long getSolveNanos ()
+    {
+      return solveNanos;
+    }
+
+    /**
+     * @return the distance of the energy from the target relative to the
+     *         target
+     */
+    public double getTargetGap ()
+    {
+      return Math.abs(energy - target) / Math.abs(target);
+    }
+
+    @Override
+    public String toString ()
+    {
+      return String.format("Dispatched %d producers, energy %.1f of %.1f kWh, "
+                               + "grade %.4f in %d iterations %.2f ms",
+                           selection.size(), energy, target, grade,
+                           iterations, solveNanos / Histogram.NANOS_IN_MILLI);
+    }
+  }
+}
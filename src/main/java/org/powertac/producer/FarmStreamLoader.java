@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+import org.powertac.producer.pvfarm.PvPanel;
+import org.powertac.producer.pvfarm.SolarFarm;
+import org.powertac.producer.utils.CurveRegistry;
+import org.powertac.producer.windfarm.WindFarm;
+import org.powertac.producer.windfarm.WindTurbine;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.ReaderWrapper;
+import com.thoughtworks.xstream.io.xml.QNameMap;
+import com.thoughtworks.xstream.io.xml.StaxReader;
+
+/**
+ * <p>
+ * Loads producer files with a StAX reader. The turbines and panels of the wind
+ * and solar farms are de-serialized one by one and added to the farm so only
+ * one of them is kept in memory besides the farm itself. Identical power
+ * curves are shared through the {@link CurveRegistry}.
+ * </p>
+ * <p>
+ * The other producers are small and are de-serialized as a whole from the same
+ * stream.
+ * </p>
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class FarmStreamLoader
+{
+  static final private Logger log = Logger.getLogger(FarmStreamLoader.class
+          .getName());
+
+  // Matches the xstream references to the previous farm elements
+  private static final Pattern SIBLING_REFERENCE = Pattern
+          .compile("\\.\\./([^/\\[]+)(?:\\[(\\d+)\\])?");
+
+  private XStream xstream;
+
+  // The peak heap usage of the last load in bytes
+  private long peakHeap = 0;
+
+  /**
+   * Constructs a loader that uses the shared xstream instance
+   */
+  public FarmStreamLoader ()
+  {
+    xstream = ProducerService.getXStream();
+  }
+
+  /**
+   * Loads the producer of the given file.
+   * 
+   * @param source
+   *          the xml file of the producer
+   * @return the de-serialized producer
+   * @throws IOException
+   */
+  public Producer load (URL source) throws IOException
+  {
+    List<MemoryPoolMXBean> pools = heapPools();
+    for (MemoryPoolMXBean pool: pools)
+      pool.resetPeakUsage();
+
+    InputStream stream = source.openStream();
+    try {
+      XMLStreamReader in =
+        XMLInputFactory.newInstance().createXMLStreamReader(stream);
+      StaxReader reader = new StaxReader(new QNameMap(), in);
+      Producer producer;
+      if (reader.getNodeName().equals("wind-farm")
+          || reader.getNodeName().equals("solar-farm"))
+        producer = loadFarm(reader);
+      else
+        producer = (Producer) xstream.unmarshal(reader);
+      reader.close();
+
+      peakHeap = 0;
+      for (MemoryPoolMXBean pool: pools)
+        peakHeap += pool.getPeakUsage().getUsed();
+      log.info(String.format("Streamed %s peak heap: %.2f MB curves: %d/%d",
+                             source, peakHeap / (1024.0 * 1024.0),
+                             CurveRegistry.getUniqueCount(),
+                             CurveRegistry.getTotalCount()));
+      return producer;
+    }
+    catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * De-serializes the farm without its children and then adds them one by
+   * one.
+   */
+  private Producer loadFarm (StaxReader reader) throws IOException
+  {
+    Producer farm = (Producer) xstream.unmarshal(new ReaderWrapper(reader) {
+      @Override
+      public boolean hasMoreChildren ()
+      {
+        return false;
+      }
+    });
+    // keep the capacity of the file like xstream does
+    double upperPowerCap = farm.getUpperPowerCap();
+
+    // The previous children by their name for the references
+    Map<String, List<Object>> children = new HashMap<String, List<Object>>();
+    while (reader.hasMoreChildren()) {
+      reader.moveDown();
+      String name = reader.getNodeName();
+      String reference = reader.getAttribute("reference");
+      Object child;
+      if (reference != null)
+        child = resolve(reference, children);
+      else
+        child = xstream.unmarshal(reader);
+      reader.moveUp();
+
+      if (!children.containsKey(name))
+        children.put(name, new ArrayList<Object>());
+      children.get(name).add(child);
+
+      if (farm instanceof WindFarm && child instanceof WindTurbine)
+        ((WindFarm) farm).addWindTurbine((WindTurbine) child);
+      else if (farm instanceof SolarFarm && child instanceof PvPanel)
+        ((SolarFarm) farm).addPanel((PvPanel) child);
+      else
+        throw new IOException("Unexpected element " + name + " in "
+                              + farm.getName());
+    }
+    farm.setUpperPowerCap(upperPowerCap);
+    return farm;
+  }
+
+  /**
+   * Resolves an xstream reference to a previous element of the farm
+   */
+  private Object resolve (String reference, Map<String, List<Object>> children)
+    throws IOException
+  {
+    Matcher m = SIBLING_REFERENCE.matcher(reference);
+    if (!m.matches())
+      throw new IOException("Unsupported reference " + reference);
+    List<Object> previous = children.get(m.group(1));
+    int index = m.group(2) == null ? 0 : Integer.parseInt(m.group(2)) - 1;
+    if (previous == null || index < 0 || index >= previous.size())
+      throw new IOException("Invalid reference " + reference);
+    return previous.get(index);
+  }
+
+  /**
+   * @return the heap memory pools of the jvm
+   */
+  private static List<MemoryPoolMXBean> heapPools ()
+  {
+    List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+    for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid())
+        pools.add(pool);
+    }
+    return pools;
+  }
+
+  /**
+   * Returns the sum of the peak usage of the heap pools during the last load.
+   * The pools don't peak at the same time so this is an upper bound.
+   * 
+   * @return the peak heap usage in bytes
+   */
+  public long getPeakHeap ()
+  {
+    return peakHeap;
+  }
+}
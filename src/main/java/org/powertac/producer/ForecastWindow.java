@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.powertac.common.WeatherForecast;
+import org.powertac.common.WeatherForecastPrediction;
+import org.powertac.common.repo.TimeslotRepo;
+
+/**
+ * The forecast predictions laid out over the hours of a customer profile. The
+ * timeslot indexes are kept sorted in an int array next to their predictions.
+ * If the forecast is shorter than the profile its predictions are repeated
+ * until the profile is filled. A window doesn't change after it is created,
+ * so the last one is shared by all the producers that generate a profile of
+ * the same length for the same forecast. The time contexts of the hours are
+ * created the first time they are needed.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class ForecastWindow
+{
+  // The last window that was created
+  private static volatile ForecastWindow last = null;
+
+  private final WeatherForecast forecast;
+  private final int profileHours;
+  private final int[] timeslots;
+  private final WeatherForecastPrediction[] predictions;
+  private volatile TimeContext[] times = null;
+
+  /**
+   * Returns the window of the forecast for the given number of hours. The
+   * window is created only if it isn't the same as the last one.
+   * 
+   * @param forecast
+   *          the weather forecast
+   * @param profileHours
+   *          the length of the profile
+   * @return the forecast window
+   */
+  public static ForecastWindow of (WeatherForecast forecast, int profileHours)
+  {
+    ForecastWindow window = last;
+    if (window == null || window.forecast != forecast
+        || window.profileHours != profileHours) {
+      window = new ForecastWindow(forecast, profileHours);
+      last = window;
+    }
+    return window;
+  }
+
+  /**
+   * Forgets the last window.
+   */
+  public static void clear ()
+  {
+    last = null;
+  }
+
+  ForecastWindow (WeatherForecast forecast, int profileHours)
+  {
+    if (forecast == null || profileHours < 0)
+      throw new IllegalArgumentException("Invalid forecast window");
+    this.forecast = forecast;
+    this.profileHours = profileHours;
+
+    List<WeatherForecastPrediction> list = forecast.getPredictions();
+    int[] slots = new int[profileHours];
+    WeatherForecastPrediction[] values =
+      new WeatherForecastPrediction[profileHours];
+    int size = 0;
+    int k = 0;
+
+    // if the forecasts aren't enough we replicate the rest of the data
+    // Non weather sensitive producer we want this like the fossil plants
+    while (size < profileHours && !list.isEmpty()) {
+      for (WeatherForecastPrediction prediction: list) {
+        if (size >= profileHours)
+          break;
+        int slot =
+          prediction.getForecastTime() + forecast.getTimeslotIndex() + k
+                  * list.size();
+        // the predictions are normally in order so the slot is appended
+        if (size == 0 || slots[size - 1] < slot) {
+          slots[size] = slot;
+          values[size] = prediction;
+          size++;
+          continue;
+        }
+        int pos = Arrays.binarySearch(slots, 0, size, slot);
+        if (pos >= 0) {
+          // a later prediction for the same slot replaces the earlier one
+          values[pos] = prediction;
+        }
+        else {
+          pos = -pos - 1;
+          System.arraycopy(slots, pos, slots, pos + 1, size - pos);
+          System.arraycopy(values, pos, values, pos + 1, size - pos);
+          slots[pos] = slot;
+          values[pos] = prediction;
+          size++;
+        }
+      }
+      k++;
+    }
+
+    if (size < profileHours) {
+      slots = Arrays.copyOf(slots, size);
+      values = Arrays.copyOf(values, size);
+    }
+    this.timeslots = slots;
+    this.predictions = values;
+  }
+
+  /**
+   * @return the forecast of the window
+   */
+  public WeatherForecast getForecast ()
+  {
+    return forecast;
+  }
+
+  /**
+   * @return the requested number of hours
+   */
+  public int getProfileHours ()
+  {
+    return profileHours;
+  }
+
+  /**
+   * @return the number of hours in the window, zero if the forecast has no
+   *         predictions
+   */
+  public int size ()
+  {
+    return timeslots.length;
+  }
+
+  /**
+   * @param i
+   *          the hour of the window
+   * @return the timeslot index of the hour
+   */
+  public int getTimeslot (int i)
+  {
+    return timeslots[i];
+  }
+
+  /**
+   * @param i
+   *          the hour of the window
+   * @return the prediction for the hour
+   */
+  public WeatherForecastPrediction getPrediction (int i)
+  {
+    return predictions[i];
+  }
+
+  /**
+   * Returns the time contexts of the hours of the window. They are created
+   * once for the window.
+   * 
+   * @param timeslotRepo
+   *          the repository that gives the start time of the timeslots
+   * @return the time context of every hour
+   */
+  public TimeContext[] getTimes (TimeslotRepo timeslotRepo)
+  {
+    TimeContext[] result = times;
+    if (result == null) {
+      synchronized (this) {
+        result = times;
+        if (result == null) {
+          result = new TimeContext[timeslots.length];
+          for (int i = 0; i < result.length; i++)
+            result[i] =
+              new TimeContext(timeslots[i],
+                              timeslotRepo.getTimeForIndex(timeslots[i]));
+          times = result;
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -15,10 +15,15 @@
  ******************************************************************************/
 package org.powertac.producer;
 
-import java.util.Iterator;
-import java.util.SortedMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.powertac.common.Competition;
@@ -111,11 +116,17 @@ public abstract class Producer
   protected TariffSubscription currentSubscription = null;
   @XStreamOmitField
   protected ProducerAccessor producerAccessor;
+  @XStreamOmitField
+  protected ProducerMetrics metrics;
 
   // The preferred plant output. It is up to the plant if it can change its
   // output to much this value. The units are kwh. Must be negative.
   @XStreamOmitField
   protected double preferredOutput;
+  // The output the plant could produce in the last timeslot, zero before the
+  // first one
+  @XStreamOmitField
+  protected double lastOutput = 0;
   @XStreamOmitField
   protected CustomerInfo customerInfo;
   // Random id
@@ -219,6 +230,8 @@ public abstract class Producer
 
     producerAccessor = new ProducerAccessor(this, profileHours);
 
+    metrics = new ProducerMetrics();
+
     tariffEvaluator = new TariffEvaluator(producerAccessor);
 
     tariffEvaluator.initializeInconvenienceFactors(TOU_FACTOR,
@@ -243,12 +256,15 @@ public abstract class Producer
    */
   public void consumePower ()
   {
+    long start = metrics.begin();
     // We need to get the Weather report and
     // then produced power for the active tariff
     WeatherReport report = weatherReportRepo.currentWeatherReport();
 
     if (currentSubscription != null && report != null) {
       double power = getOutput(report);
+      metrics.addOutputCalls(1);
+      lastOutput = power;
       double charge =
         currentSubscription.getTariff()
                 .getUsageCharge(power, currentSubscription.getTotalUsage(),
@@ -268,6 +284,7 @@ public abstract class Producer
     else {
       log.error("No active subscription or null weather report");
     }
+    metrics.end(ProducerMetrics.Operation.CONSUME_POWER, start);
   }
 
   /**
@@ -293,6 +310,25 @@ public abstract class Producer
                WeatherForecastPrediction weatherForecastPrediction,
                double previousOutput);
 
+  /**
+   * The same as getOutput(timeslotIndex, weatherForecastPrediction,
+   * previousOutput) with the time of the timeslot already converted. The
+   * producers that need the time of the timeslot override it.
+   * 
+   * @param time
+   *          the time of the timeslot
+   * @param weatherForecastPrediction
+   * @param previousOutput
+   * @return the plant predicted output, must be negative or zero
+   */
+  public double getOutput (TimeContext time,
+                           WeatherForecastPrediction weatherForecastPrediction,
+                           double previousOutput)
+  {
+    return getOutput(time.getTimeslotIndex(), weatherForecastPrediction,
+                     previousOutput);
+  }
+
   /**
    * This is called every time slot.
    */
@@ -300,7 +336,9 @@ public abstract class Producer
   {
     // We produce power here for the active tariff
     // We must call consumePower
+    long start = metrics.begin();
     consumePower();
+    metrics.end(ProducerMetrics.Operation.STEP, start);
   }
 
   /**
@@ -347,22 +385,79 @@ public abstract class Producer
    */
   public void evaluateNewTariffs ()
   {
-    tariffEvaluator.evaluateTariffs();
-
-    // check if the active tariff changed and recalculate the preferred
-    // output
-    List<TariffSubscription> subscriptions =
-      tariffSubscriptionRepo.findActiveSubscriptionsForCustomer(customerInfo);
-
-    if (subscriptions.size() > 0) {
-      if (subscriptions.get(0) != currentSubscription) {
-        // update preferred output
-        currentSubscription = subscriptions.get(0);
-        preferredOutput =
-          producerAccessor.generateOutput(currentSubscription.getTariff(),
-                                          producerAccessor.hours).preferredOutput;
+    long start = metrics.begin();
+    // the evaluator asks for the profile of every tariff, compute the
+    // outputs of the producer once for all of them
+    producerAccessor.beginBatch();
+    try {
+      // the evaluator may draw from the seed of the producer without asking
+      // for a profile, the background computation must end first
+      producerAccessor.awaitPrecompute();
+      tariffEvaluator.evaluateTariffs();
+
+      // check if the active tariff changed and recalculate the preferred
+      // output
+      List<TariffSubscription> subscriptions =
+        tariffSubscriptionRepo
+                .findActiveSubscriptionsForCustomer(customerInfo);
+
+      if (subscriptions.size() > 0) {
+        if (subscriptions.get(0) != currentSubscription) {
+          // update preferred output
+          currentSubscription = subscriptions.get(0);
+          preferredOutput =
+            producerAccessor.generateOutput(currentSubscription.getTariff(),
+                                            producerAccessor.hours).preferredOutput;
+        }
       }
     }
+    finally {
+      producerAccessor.endBatch();
+    }
+    metrics.end(ProducerMetrics.Operation.EVALUATE_TARIFFS, start);
+  }
+
+  /**
+   * Tells if newly published tariffs can change the subscription of the
+   * producer. That is the case if one of them has a power type the producer
+   * can use, like its own or the generic production type, or if the tariff
+   * of a current subscription was revoked, superseded or expired.
+   * 
+   * @param tariffs
+   *          the new tariffs, null if they aren't known
+   * @return true if the producer should evaluate the tariffs
+   */
+  public boolean isAffectedBy (List<Tariff> tariffs)
+  {
+    if (tariffs == null)
+      return true;
+    PowerType type = customerInfo.getPowerType();
+    for (Tariff tariff: tariffs) {
+      if (type.canUse(tariff.getPowerType()))
+        return true;
+    }
+    for (TariffSubscription subscription: tariffSubscriptionRepo
+            .findActiveSubscriptionsForCustomer(customerInfo)) {
+      Tariff tariff = subscription.getTariff();
+      if (tariff.isRevoked() || tariff.isExpired()
+          || tariff.getIsSupersededBy() != null)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Tells if the forecast output of the producer can be computed once and
+   * reused for many tariffs. That is true if getOutput(timeslotIndex,
+   * prediction, previousOutput) doesn't depend on the previous output and
+   * doesn't change the state of the producer. The producers that don't
+   * qualify must override this.
+   * 
+   * @return true if the forecast output can be reused
+   */
+  protected boolean isForecastReusable ()
+  {
+    return true;
   }
 
   /**
@@ -384,10 +479,43 @@ public abstract class Producer
    */
   public static class ProducerAccessor implements CustomerModelAccessor
   {
+    // The relative margin below the best payment for skipping a set-point
+    private static final double PRUNING_TOLERANCE = 1e-9;
+
+    // True if the set-points that can't pay more are skipped
+    private static volatile boolean pruning = false;
 
     private Producer parent;
     private int hours;
 
+    // True between beginBatch() and endBatch()
+    private boolean batch = false;
+    // The outputs of the current batch
+    private RawOutputs rawOutputs = null;
+    // The outputs that are being computed in the background
+    private Future<RawOutputs> precomputed = null;
+
+    /**
+     * @return true if the set-points that can't pay more than the best one
+     *         are skipped
+     */
+    public static boolean isPruningEnabled ()
+    {
+      return pruning;
+    }
+
+    /**
+     * Enables the bound based skipping of set-points. It applies to the
+     * outputs that are computed once per batch and to tariffs without tiers
+     * or regulation rates, the rest are always scored exhaustively.
+     * 
+     * @param enabled
+     */
+    public static void setPruningEnabled (boolean enabled)
+    {
+      pruning = enabled;
+    }
+
     public ProducerAccessor (Producer parent, int hours)
     {
       if (hours <= 0 || parent == null)
@@ -406,42 +534,217 @@ public abstract class Producer
      */
     protected PreferredOutput generateOutput (Tariff tariff, int profileHours)
     {
-      // try and collect forecasts for the requested number of hours
-      SortedMap<Integer, WeatherForecastPrediction> predictions =
-        new TreeMap<Integer, WeatherForecastPrediction>();
+      long start = parent.metrics.begin();
+      PreferredOutput result;
+      RawOutputs raw = getRawOutputs(profileHours);
+      if (raw == null)
+        result = new PreferredOutput(parent.preferredOutput, new double[0]);
+      else
+        result = score(tariff, raw);
+      parent.metrics.end(ProducerMetrics.Operation.GENERATE_OUTPUT, start);
+      return result;
+    }
+
+    /**
+     * Generates the producer's output for N hours in the future under each
+     * of the tariffs. The outputs of the producer are computed once and only
+     * the tariffs are applied to them separately.
+     * 
+     * @param tariffs
+     *          the tariffs
+     * @param profileHours
+     *          the profile length
+     * @return the preferred output under each tariff in the same order
+     */
+    public List<PreferredOutput> generateOutputs (List<Tariff> tariffs,
+                                                  int profileHours)
+    {
+      boolean wasBatch = batch;
+      if (!wasBatch)
+        beginBatch();
+      try {
+        List<PreferredOutput> results =
+          new ArrayList<PreferredOutput>(tariffs.size());
+        for (Tariff tariff: tariffs)
+          results.add(generateOutput(tariff, profileHours));
+        return results;
+      }
+      finally {
+        if (!wasBatch)
+          endBatch();
+      }
+    }
 
+    /**
+     * Starts a batch of profile generations for the same forecast. Until
+     * endBatch() is called the outputs of the producer are computed once and
+     * reused for every tariff, if the producer allows it.
+     */
+    public void beginBatch ()
+    {
+      batch = true;
+      rawOutputs = null;
+    }
+
+    /**
+     * Ends the batch and forgets the computed outputs.
+     */
+    public void endBatch ()
+    {
+      batch = false;
+      rawOutputs = null;
+    }
+
+    /**
+     * Starts computing the outputs of the producer for the current forecast
+     * on the executor, so that the next tariff evaluation only has to score
+     * them. Nothing else may use the producer until the outputs are taken by
+     * the evaluation or cancelPrecompute() is called. Does nothing if the
+     * outputs of the producer can't be reused.
+     * 
+     * @param executor
+     *          the executor that computes the outputs
+     */
+    public void precompute (ExecutorService executor)
+    {
+      cancelPrecompute();
       WeatherForecast forecast =
         parent.weatherForecastRepo.currentWeatherForecast();
+      if (forecast == null || !parent.isForecastReusable())
+        return;
+
+      final RawOutputs raw = new RawOutputs(forecast, hours);
+      precomputed = executor.submit(new Callable<RawOutputs>() {
+        @Override
+        public RawOutputs call ()
+        {
+          raw.computeOutputs();
+          return raw;
+        }
+      });
+    }
 
-      if (forecast == null) {
-        log.error("Got zero weather forecasts on the creation of the customer profile");
-        return new PreferredOutput(parent.preferredOutput, new double[0]);
+    /**
+     * Waits for the outputs that are computed in the background to be
+     * ready, so that the producer can be used again. The outputs stay
+     * available to the next profile generation.
+     */
+    public void awaitPrecompute ()
+    {
+      Future<RawOutputs> future = precomputed;
+      if (future == null)
+        return;
+      try {
+        future.get();
+      }
+      catch (CancellationException e) {
+        precomputed = null;
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       }
+      catch (ExecutionException e) {
+        // logged when the outputs are taken
+      }
+    }
 
-      boolean quit = false;
-      int k = 0;
+    /**
+     * @return true if outputs were computed in the background and are ready
+     */
+    public boolean isPrecomputeDone ()
+    {
+      return precomputed != null && precomputed.isDone();
+    }
 
-      // if the forecasts aren't enough we replicate the rest of the data
-      // Non weather sensitive producer we want this like the fossil plants
-      while (!quit) {
-        for (WeatherForecastPrediction prediction: forecast.getPredictions()) {
+    /**
+     * Forgets the outputs that are computed in the background. If their
+     * computation is running it waits for it to end, so that the producer can
+     * be used again.
+     */
+    public void cancelPrecompute ()
+    {
+      takePrecomputed();
+    }
 
-          if (predictions.size() >= profileHours) {
-            quit = true;
-            break;
-          }
-          else {
-            predictions.put(prediction.getForecastTime()
-                                    + forecast.getTimeslotIndex() + k
-                                    * forecast.getPredictions().size(),
-                            prediction);
-          }
+    /**
+     * Takes the outputs that were computed in the background. If their
+     * computation hasn't started it is cancelled and if it is running it is
+     * waited for.
+     * 
+     * @return the outputs or null if they aren't available
+     */
+    private RawOutputs takePrecomputed ()
+    {
+      Future<RawOutputs> future = precomputed;
+      precomputed = null;
+      if (future == null || future.cancel(false))
+        return null;
+      try {
+        return future.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e) {
+        log.error("Precomputing the outputs of " + parent.name + " failed",
+                  e.getCause());
+      }
+      return null;
+    }
 
+    /**
+     * Returns the outputs of the producer for the current forecast. In a
+     * batch they are computed once per forecast. Outputs that were computed
+     * in the background for the same forecast are used if they are ready,
+     * otherwise they are computed here.
+     * 
+     * @return the outputs or null if there is no forecast
+     */
+    private RawOutputs getRawOutputs (int profileHours)
+    {
+      WeatherForecast forecast =
+        parent.weatherForecastRepo.currentWeatherForecast();
+
+      if (forecast == null) {
+        cancelPrecompute();
+        log.error("Got zero weather forecasts on the creation of the customer profile");
+        return null;
+      }
+
+      if (precomputed != null) {
+        RawOutputs raw = takePrecomputed();
+        if (raw != null && raw.forecast == forecast
+            && raw.profileHours == profileHours) {
+          parent.metrics.addPrecomputedProfile();
+          if (batch)
+            rawOutputs = raw;
+          return raw;
         }
-        k++;
       }
 
-      Iterator<Integer> slotIter = predictions.keySet().iterator();
+      if (rawOutputs != null && rawOutputs.forecast == forecast
+          && rawOutputs.profileHours == profileHours) {
+        parent.metrics.addProfileCacheHit();
+        return rawOutputs;
+      }
+
+      RawOutputs raw = new RawOutputs(forecast, profileHours);
+      if (batch && parent.isForecastReusable()) {
+        raw.computeOutputs();
+        rawOutputs = raw;
+      }
+      return raw;
+    }
+
+    /**
+     * Applies the tariff to the outputs of every set-point and keeps the one
+     * that pays the most.
+     */
+    private PreferredOutput score (Tariff tariff, RawOutputs raw)
+    {
+      if (pruning && raw.outputs != null && !tariff.isTiered()
+          && !tariff.hasRegulationRate())
+        return scorePruned(tariff, raw);
 
       // Since production is not an
       // interruptible power type
@@ -460,20 +763,23 @@ public abstract class Producer
       // save the preferred output to restore later
       double savePreferredOutput = parent.preferredOutput;
 
-      // CARE Careful on the signs
-      for (parent.preferredOutput = 0; parent.preferredOutput >= parent.upperPowerCap; parent.preferredOutput +=
-        STEP * parent.upperPowerCap) {
+      ForecastWindow window = raw.window;
+      int hours = window.size();
+      for (int p = 0; p < raw.setPoints.length; p++) {
+        parent.preferredOutput = raw.setPoints[p];
         double sum = 0;
         // Here we create the usage vector
-        double[] out = new double[predictions.size()];
+        double[] out = new double[hours];
         double lastOut = 0;
-        for (int i = 0; i < out.length; i++) {
-          int timeslot = slotIter.next();
-          double usage =
-            parent.getOutput(timeslot, predictions.get(timeslot), lastOut);
+        for (int i = 0; i < hours; i++) {
+          double usage;
+          if (raw.outputs != null)
+            usage = raw.outputs[p][i];
+          else
+            usage = parent.getOutput(raw.times[i], window.getPrediction(i),
+                                     lastOut);
           double charge =
-            tariff.getUsageCharge(parent.timeslotRepo.getTimeForIndex(timeslot),
-                                  usage, sum);
+            tariff.getUsageCharge(raw.times[i].getInstant(), usage, sum);
           if (charge > parent.costPerKwh * usage + parent.hourlyMaintenanceCost
                        * parent.timeslotLengthInMin / MINUTES_IN_HOUR) {
             out[i] = usage;
@@ -484,6 +790,9 @@ public abstract class Producer
           }
           lastOut = out[i];
         }
+        if (raw.outputs == null)
+          parent.metrics.addOutputCalls(hours);
+
         // calculate the money
         double money =
           parent.tariffEvaluationHelper.estimateCost(tariff, out, true);
@@ -494,8 +803,6 @@ public abstract class Producer
           maxOuput = out;
           maxPreferredOutput = parent.preferredOutput;
         }
-        // reset the iterator
-        slotIter = predictions.keySet().iterator();
       }
 
       // restore the preferred output
@@ -504,6 +811,177 @@ public abstract class Producer
       return new PreferredOutput(maxPreferredOutput, maxOuput);
     }
 
+    /**
+     * Gives the same result as score() but skips the set-points that can't
+     * pay more than the best one found so far. Without tiers or regulation
+     * rates the charge of an hour is proportional to the output, so the
+     * payment of a set-point is at most the sum of the hours that would be
+     * paid. The set-points are tried from the highest bound down and one is
+     * abandoned as soon as its paid hours plus the bound of the remaining
+     * hours fall below the best payment. A set-point with the same outputs
+     * as a lower one is skipped, since it can only tie with it.
+     */
+    private PreferredOutput scorePruned (Tariff tariff, RawOutputs raw)
+    {
+      ForecastWindow window = raw.window;
+      int hours = window.size();
+      int points = raw.setPoints.length;
+
+      // the charge of each hour for one kWh as the estimation computes it
+      double[] unit = new double[hours];
+      Arrays.fill(unit, 1);
+      double[] unitCharge =
+        parent.tariffEvaluationHelper.estimateCostArray(tariff, unit, false);
+      double periodic = tariff.getPeriodicPayment() / HOURS_IN_DAY * hours;
+
+      // remaining[p][i] is the most set-point p can get from hour i on
+      final double[][] remaining = new double[points][hours + 1];
+      List<Integer> candidates = new ArrayList<Integer>(points);
+      for (int p = 0; p < points; p++) {
+        if (isRepeated(raw.outputs, p))
+          continue;
+        for (int i = hours - 1; i >= 0; i--)
+          remaining[p][i] =
+            remaining[p][i + 1]
+                    + Math.max(0, raw.outputs[p][i] * unitCharge[i]);
+        candidates.add(p);
+      }
+      parent.metrics.addPrunedSetPoints(points - candidates.size());
+      Integer[] order = candidates.toArray(new Integer[candidates.size()]);
+      Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare (Integer a, Integer b)
+        {
+          return Double.compare(remaining[b][0], remaining[a][0]);
+        }
+      });
+
+      double maxPayment = Double.NEGATIVE_INFINITY;
+      double[] maxOuput = null;
+      int best = -1;
+      double overhead =
+        parent.hourlyMaintenanceCost * parent.timeslotLengthInMin
+                / MINUTES_IN_HOUR;
+
+      for (int n = 0; n < order.length; n++) {
+        int p = order[n];
+        // the rest of the set-points have a lower bound
+        if (isBelow(remaining[p][0] + periodic, maxPayment)) {
+          parent.metrics.addPrunedSetPoints(order.length - n);
+          break;
+        }
+
+        double sum = 0;
+        double paid = 0;
+        double[] out = new double[hours];
+        boolean abandoned = false;
+        for (int i = 0; i < hours; i++) {
+          double usage = raw.outputs[p][i];
+          double charge =
+            tariff.getUsageCharge(raw.times[i].getInstant(), usage, sum);
+          if (charge > parent.costPerKwh * usage + overhead) {
+            out[i] = usage;
+            sum += usage;
+            paid += usage * unitCharge[i];
+          }
+          if (isBelow(paid + remaining[p][i + 1] + periodic, maxPayment)) {
+            abandoned = true;
+            break;
+          }
+        }
+        if (abandoned) {
+          parent.metrics.addPrunedSetPoints(1);
+          continue;
+        }
+
+        double money =
+          parent.tariffEvaluationHelper.estimateCost(tariff, out, true);
+        // on a tie the lower set-point wins like in the exhaustive search
+        if (money > maxPayment || (money == maxPayment && p < best)) {
+          maxPayment = money;
+          maxOuput = out;
+          best = p;
+        }
+      }
+
+      if (best < 0)
+        return new PreferredOutput(0, maxOuput);
+      return new PreferredOutput(raw.setPoints[best], maxOuput);
+    }
+
+    /**
+     * @return true if a lower set-point has the same outputs
+     */
+    private static boolean isRepeated (double[][] outputs, int p)
+    {
+      for (int q = 0; q < p; q++) {
+        if (Arrays.equals(outputs[q], outputs[p]))
+          return true;
+      }
+      return false;
+    }
+
+    /**
+     * @return true if the bound is surely lower than the payment
+     */
+    private static boolean isBelow (double bound, double payment)
+    {
+      return bound < payment - PRUNING_TOLERANCE * (1 + Math.abs(payment));
+    }
+
+    /**
+     * The forecast hours and the producer outputs at every set-point before
+     * any tariff is applied
+     */
+    private class RawOutputs
+    {
+      WeatherForecast forecast;
+      int profileHours;
+      ForecastWindow window;
+      TimeContext[] times;
+      double[] setPoints;
+      // The outputs by set-point and hour, null if they aren't reusable
+      double[][] outputs = null;
+
+      RawOutputs (WeatherForecast forecast, int profileHours)
+      {
+        this.forecast = forecast;
+        this.profileHours = profileHours;
+
+        window = ForecastWindow.of(forecast, profileHours);
+        times = window.getTimes(parent.timeslotRepo);
+
+        // CARE Careful on the signs
+        List<Double> points = new ArrayList<Double>();
+        for (double point = 0; point >= parent.upperPowerCap; point +=
+          STEP * parent.upperPowerCap)
+          points.add(point);
+        setPoints = new double[points.size()];
+        for (int i = 0; i < setPoints.length; i++)
+          setPoints[i] = points.get(i);
+      }
+
+      /**
+       * Computes the outputs of every set-point once.
+       */
+      void computeOutputs ()
+      {
+        double savePreferredOutput = parent.preferredOutput;
+        outputs = new double[setPoints.length][window.size()];
+        for (int p = 0; p < setPoints.length; p++) {
+          parent.preferredOutput = setPoints[p];
+          double lastOut = 0;
+          for (int i = 0; i < window.size(); i++) {
+            outputs[p][i] =
+              parent.getOutput(times[i], window.getPrediction(i), lastOut);
+            lastOut = outputs[p][i];
+          }
+        }
+        parent.preferredOutput = savePreferredOutput;
+        parent.metrics.addOutputCalls(setPoints.length * window.size());
+      }
+    }
+
     @Override
     public CustomerInfo getCustomerInfo ()
     {
@@ -767,6 +1245,14 @@ public abstract class Producer
     return tariffEvaluator;
   }
 
+  /**
+   * @return the runtime metrics of this producer
+   */
+  public ProducerMetrics getMetrics ()
+  {
+    return metrics;
+  }
+
   /**
    * @return the tariffEvaluationHelper
    */
@@ -807,6 +1293,15 @@ public abstract class Producer
     return preferredOutput;
   }
 
+  /**
+   * @return the output the plant could produce in the last timeslot, whether
+   *         it was paid enough to produce it or not
+   */
+  public double getLastOutput ()
+  {
+    return lastOutput;
+  }
+
   /**
    * @return the customerInfo
    */
@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+/**
+ * The runtime metrics of one producer: the number of calls and a latency
+ * histogram of the expensive operations and the number of getOutput() calls
+ * they made. The metrics are collected only when they are enabled. When they
+ * are disabled every instrumented call costs one volatile read.
+ * 
+ * The metrics are updated by the thread that steps the producer and are read
+ * without synchronization, so a reader may see them slightly out of date.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class ProducerMetrics
+{
+  /**
+   * The instrumented operations of a producer
+   */
+  public enum Operation
+  {
+    STEP, CONSUME_POWER, EVALUATE_TARIFFS, GENERATE_OUTPUT
+  }
+
+  private static volatile boolean enabled = false;
+
+  private Histogram[] histograms = new Histogram[Operation.values().length];
+
+  // The number of getOutput() calls
+  private long outputCalls = 0;
+
+  // The number of profiles that reused the outputs of a previous one
+  private long profileCacheHits = 0;
+
+  // The number of profiles that used outputs computed in the background
+  private long precomputedProfiles = 0;
+
+  // The number of set-points that were skipped by the tariff scoring
+  private long prunedSetPoints = 0;
+
+  public ProducerMetrics ()
+  {
+    for (int i = 0; i < histograms.length; i++)
+      histograms[i] = new Histogram();
+  }
+
+  /**
+   * @return true if the metrics are collected
+   */
+  public static boolean isEnabled ()
+  {
+    return enabled;
+  }
+
+  /**
+   * Enables or disables the collection of the metrics of all the producers.
+   * 
+   * @param enabled
+   */
+  public static void setEnabled (boolean enabled)
+  {
+    ProducerMetrics.enabled = enabled;
+  }
+
+  /**
+   * Starts the timing of an operation.
+   * 
+   * @return the start time or zero if the metrics are disabled
+   */
+  long begin ()
+  {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records an operation that started at the time returned by begin().
+   * 
+   * @param operation
+   *          the operation
+   * @param start
+   *          the start time
+   */
+  void end (Operation operation, long start)
+  {
+    if (start != 0)
+      histograms[operation.ordinal()].record(System.nanoTime() - start);
+  }
+
+  /**
+   * Counts getOutput() calls.
+   * 
+   * @param calls
+   *          the number of calls
+   */
+  void addOutputCalls (long calls)
+  {
+    if (enabled)
+      outputCalls += calls;
+  }
+
+  /**
+   * Counts a profile that reused the outputs of a previous one.
+   */
+  void addProfileCacheHit ()
+  {
+    if (enabled)
+      profileCacheHits++;
+  }
+
+  /**
+   * Counts a profile that used outputs computed in the background.
+   */
+  void addPrecomputedProfile ()
+  {
+    if (enabled)
+      precomputedProfiles++;
+  }
+
+  /**
+   * Counts the set-points that were skipped by the tariff scoring.
+   */
+  void addPrunedSetPoints (int n)
+  {
+    if (enabled)
+      prunedSetPoints += n;
+  }
+
+  /**
+   * @return the latency histogram of the operation
+   */
+  public Histogram getHistogram (Operation operation)
+  {
+    return histograms[operation.ordinal()];
+  }
+
+  /**
+   * @return the number of calls of the operation
+   */
+  public long getCount (Operation operation)
+  {
+    return histograms[operation.ordinal()].getCount();
+  }
+
+  /**
+   * @return the number of getOutput() calls
+   */
+  public long getOutputCalls ()
+  {
+    return outputCalls;
+  }
+
+  /**
+   * @return the number of profiles that reused the outputs of a previous one
+   */
+  public long getProfileCacheHits ()
+  {
+    return profileCacheHits;
+  }
+
+  /**
+   * @return the number of profiles that used outputs computed in the
+   *         background
+   */
+  public long getPrecomputedProfiles ()
+  {
+    return precomputedProfiles;
+  }
+
+  /**
+   * @return the number of set-points that were skipped by the tariff scoring
+   */
+  public long getPrunedSetPoints ()
+  {
+    return prunedSetPoints;
+  }
+
+  /**
+   * Adds the metrics of another producer to these.
+   * 
+   * @param other
+   *          the other metrics
+   */
+  public void merge (ProducerMetrics other)
+  {
+    for (int i = 0; i < histograms.length; i++)
+      histograms[i].merge(other.histograms[i]);
+    outputCalls += other.outputCalls;
+    profileCacheHits += other.profileCacheHits;
+    precomputedProfiles += other.precomputedProfiles;
+    prunedSetPoints += other.prunedSetPoints;
+  }
+
+  /**
+   * Forgets everything that was recorded.
+   */
+  public void reset ()
+  {
+    for (Histogram histogram: histograms)
+      histogram.reset();
+    outputCalls = 0;
+    profileCacheHits = 0;
+    precomputedProfiles = 0;
+    prunedSetPoints = 0;
+  }
+
+  @Override
+  public String toString ()
+  {
+    StringBuilder builder = new StringBuilder();
+    for (Operation operation: Operation.values()) {
+      Histogram histogram = getHistogram(operation);
+      builder.append(String.format("%s n=%d mean=%.3f ms p99<%.3f ms, ",
+                                   operation.toString().toLowerCase(),
+                                   histogram.getCount(),
+                                   histogram.getMean() / Histogram.NANOS_IN_MILLI,
+                                   histogram.getPercentile(0.99)
+                                           / Histogram.NANOS_IN_MILLI));
+    }
+    builder.append("getOutput calls=").append(outputCalls);
+    builder.append(", profile cache hits=").append(profileCacheHits);
+    builder.append(", precomputed profiles=").append(precomputedProfiles);
+    builder.append(", pruned set-points=").append(prunedSetPoints);
+    return builder.toString();
+  }
+
+  /**
+   * A latency histogram with power of two buckets. Bucket i counts the
+   * latencies from 2^i up to 2^(i+1) nanoseconds.
+   */
+  public static class Histogram
+  {
+    static final double NANOS_IN_MILLI = 1000000.0;
+
+    private long[] buckets = new long[Long.SIZE];
+    private long count = 0;
+    private long totalNanos = 0;
+    private long maxNanos = 0;
+
+    void record (long nanos)
+    {
+      if (nanos < 1)
+        nanos = 1;
+      buckets[Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos)]++;
+      count++;
+      totalNanos += nanos;
+      if (nanos > maxNanos)
+        maxNanos = nanos;
+    }
+
+    void merge (Histogram other)
+    {
+      for (int i = 0; i < buckets.length; i++)
+        buckets[i] += other.buckets[i];
+      count += other.count;
+      totalNanos += other.totalNanos;
+      maxNanos = Math.max(maxNanos, other.maxNanos);
+    }
+
+    void reset ()
+    {
+      for (int i = 0; i < buckets.length; i++)
+        buckets[i] = 0;
+      count = 0;
+      totalNanos = 0;
+      maxNanos = 0;
+    }
+
+    /**
+     * @return the number of recorded latencies
+     */
+    public long getCount ()
+    {
+      return count;
+    }
+
+    /**
+     * @return the sum of the recorded latencies in nanoseconds
+     */
+    public long getTotalNanos ()
+    {
+      return totalNanos;
+    }
+
+    /**
+     * @return the mean latency in nanoseconds
+     */
+    public double getMean ()
+    {
+      return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /**
+     * @return the maximum latency in nanoseconds
+     */
+    public long getMax ()
+    {
+      return maxNanos;
+    }
+
+    /**
+     * Returns an upper bound of the percentile, the end of the bucket it
+     * falls in but no more than the maximum latency.
+     * 
+     * @param quantile
+     *          between 0 and 1
+     * @return the percentile upper bound in nanoseconds
+     */
+    public long getPercentile (double quantile)
+    {
+      if (quantile < 0 || quantile > 1)
+        throw new IllegalArgumentException("The quantile must be in [0, 1]");
+      if (count == 0)
+        return 0;
+      long rank = (long) Math.ceil(quantile * count);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= rank && seen > 0) {
+          if (i >= Long.SIZE - 2)
+            return maxNanos;
+          return Math.min(1L << (i + 1), maxNanos);
+        }
+      }
+      return maxNanos;
+    }
+  }
+}
@@ -19,14 +19,29 @@ import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.apache.log4j.Logger;
 import org.joda.time.Instant;
 import org.powertac.common.Competition;
 import org.powertac.common.Tariff;
+import org.powertac.common.WeatherForecast;
 import org.powertac.common.config.ConfigurableValue;
 import org.powertac.common.exceptions.PowerTacException;
 import org.powertac.common.interfaces.InitializationService;
@@ -35,18 +50,25 @@ import org.powertac.common.interfaces.ServerConfiguration;
 import org.powertac.common.interfaces.TariffMarket;
 import org.powertac.common.interfaces.TimeslotPhaseProcessor;
 import org.powertac.common.repo.TimeslotRepo;
+import org.powertac.common.repo.WeatherForecastRepo;
+import org.powertac.producer.Producer.ProducerAccessor;
 import org.powertac.producer.fossil.SteamPlant;
 import org.powertac.producer.hydro.Dam;
+import org.powertac.producer.hydro.DamCascade;
 import org.powertac.producer.hydro.HydroBase;
+import org.powertac.producer.hydro.Reservoir;
 import org.powertac.producer.hydro.RunOfRiver;
 import org.powertac.producer.pvfarm.PvPanel;
 import org.powertac.producer.pvfarm.SolarFarm;
+import org.powertac.producer.utils.CurveRegistry;
 import org.powertac.producer.windfarm.WindFarm;
 import org.powertac.producer.windfarm.WindTurbine;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.w3c.dom.Document;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.DomReader;
 
 /**
  * This service takes care of:
@@ -70,6 +92,10 @@ public class ProducerService extends TimeslotPhaseProcessor
   static final private Logger log = Logger.getLogger(ProducerService.class
           .getName());
 
+  private static final int DEFAULT_STREAMING_THRESHOLD = 1024;
+  private static final int DEFAULT_METRICS_LOG_PERIOD = 24;
+  private static final int BYTES_IN_KILOBYTE = 1024;
+
   @Autowired
   private TariffMarket tariffMarketService;
 
@@ -79,9 +105,36 @@ public class ProducerService extends TimeslotPhaseProcessor
   @Autowired
   private TimeslotRepo timeslotRepo;
 
+  @Autowired
+  private WeatherForecastRepo weatherForecastRepo;
+
   // The place where the xml files of the producers are stored
   private String producerFileFolder;
 
+  // Files bigger than this size in kilobytes are streamed
+  private int streamingThreshold = DEFAULT_STREAMING_THRESHOLD;
+
+  // The producer metrics are logged every that many timeslots
+  private int metricsLogPeriod = DEFAULT_METRICS_LOG_PERIOD;
+
+  // The number of timeslots the service was activated
+  private int activations = 0;
+
+  // Compute the outputs of the producers in the background after activation
+  private boolean precomputeProfiles = false;
+
+  // The threads that compute the outputs, created when first needed
+  private ExecutorService precomputeExecutor = null;
+
+  // True if outputs may be computed in the background right now
+  private boolean precomputing = false;
+
+  // The activations at the last tariff publication, -1 before the first
+  private int lastPublication = -1;
+
+  // The activations between the last two publications, 0 if unknown
+  private int publicationInterval = 0;
+
   private final String[] defaultProducers = { "/conf/dam.xml",
                                              "/conf/runoftheriver.xml",
                                              "/conf/solar-farm.xml",
@@ -90,6 +143,13 @@ public class ProducerService extends TimeslotPhaseProcessor
 
   private List<Producer> producerList = new ArrayList<Producer>();
 
+  // The configured xstream instance, see getXStream()
+  private static XStream xstream = null;
+
+  // The time it took to load each producer of the last initialization
+  private Map<Producer, LoadTiming> loadTimings =
+    new HashMap<Producer, LoadTiming>();
+
   public ProducerService ()
   {
     super();
@@ -118,7 +178,11 @@ public class ProducerService extends TimeslotPhaseProcessor
       log.info("The configuration folder is located at: " + producerFileFolder);
 
     // Clear the list of producers and create new ones
+    cancelPrecompute();
     producerList.clear();
+    activations = 0;
+    lastPublication = -1;
+    publicationInterval = 0;
 
     tariffMarketService.registerNewTariffListener(this);
 
@@ -130,8 +194,15 @@ public class ProducerService extends TimeslotPhaseProcessor
     }
 
     // Make sure producers subscribe to the default tariff
-    for (Producer producer: producerList)
+    for (Producer producer: producerList) {
+      long start = System.nanoTime();
       producer.subscribeDefault();
+      LoadTiming timing = loadTimings.get(producer);
+      if (timing != null) {
+        timing.subscribeNanos = System.nanoTime() - start;
+        log.info(timing);
+      }
+    }
 
     super.init();
 
@@ -147,7 +218,60 @@ public class ProducerService extends TimeslotPhaseProcessor
    */
   protected List<Producer> loadProducers () throws IOException
   {
-    List<Producer> producers = new ArrayList<Producer>();
+    // share the identical curves only between the producers of this game
+    CurveRegistry.clear();
+    List<URL> sources = new ArrayList<URL>();
+
+    // this loads the default producers
+    if (producerFileFolder == null) {
+      for (String name: defaultProducers) {
+        sources.add(ProducerService.class.getResource(name));
+      }
+      return loadProducers(sources);
+    }
+
+    File confFolder = new File(this.producerFileFolder);
+    if (!confFolder.isDirectory() || !confFolder.exists()) {
+      // folder is wrong return an empty array
+      log.error("The supplied configuration path was invalid.");
+    }
+    else {
+      // prefer the binary snapshot if there is one
+      File snapshot =
+        new File(confFolder, ProducerSnapshot.SNAPSHOT_FILE_NAME);
+      if (snapshot.isFile()) {
+        try {
+          long start = System.nanoTime();
+          List<Producer> producers = ProducerSnapshot.read(snapshot);
+          loadTimings.clear();
+          log.info(String.format("Loaded %d producers from %s in %.2f ms",
+                                 producers.size(), snapshot,
+                                 (System.nanoTime() - start) / 1000000.0));
+          return producers;
+        }
+        catch (IOException e) {
+          log.warn("Could not load the producer snapshot, will load the xml "
+                   + "files. " + e.getMessage());
+        }
+      }
+
+      for (File conf: listProducerFiles(confFolder)) {
+        sources.add(conf.toURI().toURL());
+      }
+    }
+    return loadProducers(sources);
+  }
+
+  /**
+   * Returns the producer xml files of the given folder.
+   * 
+   * @param confFolder
+   *          the configuration folder
+   * @return the producer files
+   */
+  static List<File> listProducerFiles (File confFolder)
+  {
+    List<File> files = new ArrayList<File>();
 
     // filters the xml files
     FileFilter filter = new FileFilter() {
@@ -162,61 +286,314 @@ public class ProducerService extends TimeslotPhaseProcessor
       }
     };
 
-    // Help xstream understand the xml files
-    XStream xstream = new XStream();
+    // iterate over all the files and collect the producer ones
+    for (File conf: confFolder.listFiles(filter)) {
+      String name = conf.toString().toLowerCase();
+      if (name.contains("steam") || name.contains("dam")
+          || name.contains("river") || name.contains("solar")
+          || name.contains("wind") || name.contains("cascade")) {
+        files.add(conf);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * This function parses the given files in parallel and then de-serializes
+   * them in order. The de-serialization isn't done in parallel since
+   * readResolve() registers every producer to the shared repositories. Files
+   * bigger than the streaming threshold aren't parsed into a document but are
+   * streamed by a {@link FarmStreamLoader} in their turn.
+   * 
+   * @param sources
+   *          the xml files of the producers
+   * @return the de-serialized producers in the same order as the files
+   * @throws IOException
+   */
+  protected List<Producer> loadProducers (List<URL> sources)
+    throws IOException
+  {
+    List<Producer> producers = new ArrayList<Producer>();
+    loadTimings.clear();
+    if (sources.isEmpty())
+      return producers;
+
+    int threads =
+      Math.min(sources.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<ParsedFile>> parsedFiles =
+        new ArrayList<Future<ParsedFile>>(sources.size());
+      for (final URL source: sources) {
+        if (isLarge(source)) {
+          parsedFiles.add(null);
+          continue;
+        }
+        parsedFiles.add(executor.submit(new Callable<ParsedFile>() {
+          @Override
+          public ParsedFile call () throws Exception
+          {
+            return parse(source);
+          }
+        }));
+      }
+
+      XStream xstream = getXStream();
+      FarmStreamLoader streamLoader = null;
+      for (int i = 0; i < sources.size(); i++) {
+        Future<ParsedFile> future = parsedFiles.get(i);
+        LoadTiming timing = new LoadTiming(sources.get(i));
+        Producer producer;
+        if (future == null) {
+          if (streamLoader == null)
+            streamLoader = new FarmStreamLoader();
+          long start = System.nanoTime();
+          producer = streamLoader.load(sources.get(i));
+          timing.resolveNanos = System.nanoTime() - start;
+        }
+        else {
+          ParsedFile file = future.get();
+          long start = System.nanoTime();
+          producer = (Producer) xstream.unmarshal(new DomReader(file.document));
+          timing.parseNanos = file.parseNanos;
+          timing.resolveNanos = System.nanoTime() - start;
+        }
+        loadTimings.put(producer, timing);
+        producers.add(producer);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+    finally {
+      executor.shutdown();
+    }
+    log.info(String.format("Loaded %d curves, %d unique",
+                           CurveRegistry.getTotalCount(),
+                           CurveRegistry.getUniqueCount()));
+    return producers;
+  }
+
+  /**
+   * @return true if the file is local and bigger than the streaming threshold
+   */
+  private boolean isLarge (URL source)
+  {
+    if (!"file".equals(source.getProtocol()))
+      return false;
+    try {
+      return new File(source.toURI()).length() > (long) streamingThreshold
+                                                 * BYTES_IN_KILOBYTE;
+    }
+    catch (URISyntaxException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Parses the xml file into a document. Safe to call from many threads.
+   * 
+   * @param source
+   *          the xml file
+   * @return the parsed file
+   * @throws Exception
+   */
+  static ParsedFile parse (URL source) throws Exception
+  {
+    long start = System.nanoTime();
+    DocumentBuilder builder =
+      DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    InputStream stream = source.openStream();
+    try {
+      Document document = builder.parse(stream);
+      return new ParsedFile(source, document, System.nanoTime() - start);
+    }
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Returns the xstream instance that understands the producer files. It is
+   * configured once and shared by all the games run by this jvm.
+   * 
+   * @return the configured xstream instance
+   */
+  static synchronized XStream getXStream ()
+  {
+    if (xstream == null) {
+      XStream configured = new XStream();
+      configure(configured);
+      xstream = configured;
+    }
+    return xstream;
+  }
+
+  /**
+   * Help xstream understand the producer classes
+   * 
+   * @param xstream
+   *          the instance to configure
+   */
+  static void configure (XStream xstream)
+  {
     xstream.processAnnotations(SteamPlant.class);
     xstream.processAnnotations(Dam.class);
     xstream.processAnnotations(RunOfRiver.class);
     xstream.processAnnotations(HydroBase.class);
+    xstream.processAnnotations(DamCascade.class);
+    xstream.processAnnotations(Reservoir.class);
     xstream.processAnnotations(WindFarm.class);
     xstream.processAnnotations(WindTurbine.class);
     xstream.processAnnotations(SolarFarm.class);
     xstream.processAnnotations(PvPanel.class);
     xstream.processAnnotations(Producer.class);
-
-    // this loads the default producers
-    if (producerFileFolder == null) {
-      for (String name: defaultProducers) {
-        InputStream stream = ProducerService.class.getResourceAsStream(name);
-        Producer producer = (Producer) xstream.fromXML(stream);
-        producers.add(producer);
-        stream.close();
-      }
-      return producers;
-    }
-
-    File confFolder = new File(this.producerFileFolder);
-    if (!confFolder.isDirectory() || !confFolder.exists()) {
-      // folder is wrong return an empty array
-      log.error("The supplied configuration path was invalid.");
-    }
-    else {
-      // iterate over all the files and dererialize them
-      for (File conf: confFolder.listFiles(filter)) {
-        String name = conf.toString().toLowerCase();
-        if (name.contains("steam") || name.contains("dam")
-            || name.contains("river") || name.contains("solar")
-            || name.contains("wind")) {
-          Producer producer = (Producer) xstream.fromXML(conf);
-          producers.add(producer);
-        }
-      }
-    }
-    return producers;
   }
 
   @Override
   public void publishNewTariffs (List<Tariff> tariffs)
   {
-    for (Producer producer: producerList)
-      producer.evaluateNewTariffs();
+    if (lastPublication >= 0 && activations > lastPublication)
+      publicationInterval = activations - lastPublication;
+    lastPublication = activations;
+
+    // the evaluator of a producer only computes profiles for the tariffs it
+    // hasn't seen, skip the producers none of the new tariffs is for
+    int skipped = 0;
+    for (Producer producer: producerList) {
+      if (tariffs == null || producer.isAffectedBy(tariffs))
+        producer.evaluateNewTariffs();
+      else
+        skipped++;
+    }
+    if (skipped > 0)
+      log.debug("Skipped the tariff evaluation of " + skipped + " producers");
   }
 
   @Override
   public void activate (Instant time, int phaseNumber)
   {
+    cancelPrecompute();
     for (Producer producer: producerList)
       producer.step();
+
+    activations++;
+    if (ProducerMetrics.isEnabled() && metricsLogPeriod > 0
+        && activations % metricsLogPeriod == 0)
+      logMetrics();
+
+    if (precomputeProfiles && isPublicationDue())
+      precompute();
+  }
+
+  /**
+   * Tells if tariffs are expected to be published before the next
+   * activation. The interval is learned from the previous publications and
+   * until it is known every activation is a candidate.
+   */
+  private boolean isPublicationDue ()
+  {
+    return publicationInterval == 0
+           || (activations - lastPublication) % publicationInterval == 0;
+  }
+
+  /**
+   * Starts computing the outputs of the producers for the current forecast
+   * in the background. The next tariff evaluation uses them if they are
+   * ready and computes the rest itself. The next activation waits for the
+   * computations that are still running, so it is only done when tariffs
+   * are expected.
+   */
+  void precompute ()
+  {
+    WeatherForecast forecast = weatherForecastRepo.currentWeatherForecast();
+    if (forecast == null)
+      return;
+    if (precomputeExecutor == null)
+      precomputeExecutor = createPrecomputeExecutor();
+    precomputing = true;
+    for (Producer producer: producerList)
+      producer.producerAccessor.precompute(precomputeExecutor);
+  }
+
+  /**
+   * Stops the background computations so that the producers can be used.
+   * The ones that haven't started are cancelled and the running ones are
+   * waited for.
+   */
+  void cancelPrecompute ()
+  {
+    if (!precomputing)
+      return;
+    for (Producer producer: producerList)
+      producer.producerAccessor.cancelPrecompute();
+    precomputing = false;
+  }
+
+  private ExecutorService createPrecomputeExecutor ()
+  {
+    // leave a processor for the rest of the server
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private int count = 0;
+
+      @Override
+      public synchronized Thread newThread (Runnable runnable)
+      {
+        Thread thread = new Thread(runnable, "producer-precompute-" + count++);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Sums the metrics of the producers of every type.
+   * 
+   * @return the metrics by the simple class name of the producers
+   */
+  public Map<String, ProducerMetrics> getMetricsByType ()
+  {
+    Map<String, ProducerMetrics> result =
+      new TreeMap<String, ProducerMetrics>();
+    for (Producer producer: producerList) {
+      if (producer.getMetrics() == null)
+        continue;
+      String type = producer.getClass().getSimpleName();
+      ProducerMetrics metrics = result.get(type);
+      if (metrics == null) {
+        metrics = new ProducerMetrics();
+        result.put(type, metrics);
+      }
+      metrics.merge(producer.getMetrics());
+    }
+    return result;
+  }
+
+  /**
+   * Forgets the metrics of all the producers.
+   */
+  public void resetMetrics ()
+  {
+    for (Producer producer: producerList) {
+      if (producer.getMetrics() != null)
+        producer.getMetrics().reset();
+    }
+  }
+
+  /**
+   * Logs a summary line of the metrics of every producer type.
+   */
+  void logMetrics ()
+  {
+    for (Map.Entry<String, ProducerMetrics> entry: getMetricsByType()
+            .entrySet())
+      log.info("Metrics of " + entry.getKey() + " after " + activations
+               + " timeslots: " + entry.getValue());
   }
 
   /**
@@ -247,6 +624,112 @@ public class ProducerService extends TimeslotPhaseProcessor
     this.producerFileFolder = producerFileFolder;
   }
 
+  /**
+   * @return the streamingThreshold in kilobytes
+   */
+  public int getStreamingThreshold ()
+  {
+    return streamingThreshold;
+  }
+
+  /**
+   * @param streamingThreshold
+   *          the streamingThreshold to set in kilobytes
+   */
+  @ConfigurableValue(valueType = "Integer", description = "Producer files bigger than this size in kilobytes are streamed.")
+  public
+    void setStreamingThreshold (int streamingThreshold)
+  {
+    this.streamingThreshold = streamingThreshold;
+  }
+
+  /**
+   * @return true if the producer metrics are collected
+   */
+  public boolean isMetricsEnabled ()
+  {
+    return ProducerMetrics.isEnabled();
+  }
+
+  /**
+   * @param metricsEnabled
+   *          collect the producer metrics or not
+   */
+  @ConfigurableValue(valueType = "Boolean", description = "Collect the runtime metrics of the producers.")
+  public
+    void setMetricsEnabled (boolean metricsEnabled)
+  {
+    ProducerMetrics.setEnabled(metricsEnabled);
+  }
+
+  /**
+   * @return true if the set-points that can't pay more are skipped in the
+   *         tariff evaluation
+   */
+  public boolean isSetPointPruning ()
+  {
+    return ProducerAccessor.isPruningEnabled();
+  }
+
+  /**
+   * @param setPointPruning
+   *          true to skip the set-points that can't pay more
+   */
+  @ConfigurableValue(valueType = "Boolean", description = "Skip the set-points that can't pay more than the best one in the tariff evaluation.")
+  public
+    void setSetPointPruning (boolean setPointPruning)
+  {
+    ProducerAccessor.setPruningEnabled(setPointPruning);
+  }
+
+  /**
+   * @return true if the outputs of the producers are computed in the
+   *         background before the tariff evaluation
+   */
+  public boolean isPrecomputeProfiles ()
+  {
+    return precomputeProfiles;
+  }
+
+  /**
+   * @param precomputeProfiles
+   *          true to compute the outputs of the producers in the background
+   */
+  @ConfigurableValue(valueType = "Boolean", description = "Compute the outputs of the producers for a new forecast in the background.")
+  public
+    void setPrecomputeProfiles (boolean precomputeProfiles)
+  {
+    this.precomputeProfiles = precomputeProfiles;
+  }
+
+  /**
+   * @return the metricsLogPeriod in timeslots
+   */
+  public int getMetricsLogPeriod ()
+  {
+    return metricsLogPeriod;
+  }
+
+  /**
+   * @param metricsLogPeriod
+   *          the metricsLogPeriod to set in timeslots, zero disables the log
+   */
+  @ConfigurableValue(valueType = "Integer", description = "The producer metrics are logged every that many timeslots.")
+  public
+    void setMetricsLogPeriod (int metricsLogPeriod)
+  {
+    this.metricsLogPeriod = metricsLogPeriod;
+  }
+
+  /**
+   * @return the startup time breakdown of the producers of the last
+   *         initialization
+   */
+  Map<Producer, LoadTiming> getLoadTimings ()
+  {
+    return Collections.unmodifiableMap(loadTimings);
+  }
+
   /**
    * @return the producerList
    */
@@ -261,7 +744,53 @@ public class ProducerService extends TimeslotPhaseProcessor
    */
   public void setProducerList (List<Producer> producerList)
   {
+    cancelPrecompute();
     this.producerList = producerList;
   }
 
+  /**
+   * A producer file parsed into a document
+   */
+  static class ParsedFile
+  {
+    URL source;
+    Document document;
+    long parseNanos;
+
+    ParsedFile (URL source, Document document, long parseNanos)
+    {
+      this.source = source;
+      this.document = document;
+      this.parseNanos = parseNanos;
+    }
+  }
+
+  /**
+   * The startup time breakdown of one producer file
+   */
+  static class LoadTiming
+  {
+    private static final double NANOS_IN_MILLI = 1000000.0;
+
+    URL source;
+    long parseNanos;
+    long resolveNanos;
+    long subscribeNanos;
+
+    LoadTiming (URL source)
+    {
+      this.source = source;
+    }
+
+    @Override
+    public String toString ()
+    {
+      return String.format("Loaded %s parse: %.2f ms resolve: %.2f ms "
+                               + "subscribe: %.2f ms", source,
+                           parseNanos / NANOS_IN_MILLI,
+                           resolveNanos / NANOS_IN_MILLI,
+                           subscribeNanos / NANOS_IN_MILLI);
+    }
+  }
+
 }
@@ -0,0 +1,415 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.powertac.producer.utils.Curve;
+import org.powertac.producer.utils.CurveConverter;
+import org.powertac.producer.utils.CurveRegistry;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.DataHolder;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.naming.NameCoder;
+import com.thoughtworks.xstream.io.xml.XmlFriendlyNameCoder;
+
+/**
+ * <p>
+ * Reads and writes a binary snapshot of a folder of producer xml files so that
+ * big fleets don't have to be parsed as xml at the start of every game.
+ * </p>
+ * <p>
+ * The snapshot starts with a magic number and a format version. Then follows a
+ * table with every curve as packed double arrays and then every producer as
+ * binary xstream tokens whose curves refer to the table. The snapshot is
+ * memory mapped when it is read.
+ * </p>
+ * <p>
+ * The snapshot can be created with: java org.powertac.producer.ProducerSnapshot
+ * config-folder [snapshot-file]
+ * </p>
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class ProducerSnapshot
+{
+  // The name of the snapshot that the ProducerService looks for
+  public static final String SNAPSHOT_FILE_NAME = "producers.snapshot";
+
+  static final int MAGIC = 0x50545053;
+  static final int VERSION = 1;
+
+  // The key of the curve table in the unmarshalling context
+  static final String CURVE_TABLE = "curveTable";
+  // The attribute that replaces the entries of a curve in the snapshot
+  static final String CURVE_REFERENCE = "curve-ref";
+
+  private static final byte CANNOT_BE_NEGATIVE = 1;
+  private static final byte CUSTOM_FIRST_VALUE = 2;
+  private static final byte CUSTOM_LAST_VALUE = 4;
+  private static final int INT_BYTES = 4;
+  private static final int DOUBLE_BYTES = 8;
+
+  // The xstream instance that resolves the curve references
+  private static XStream xstream = null;
+
+  /**
+   * Converts the producer files of the given folder into a snapshot.
+   * 
+   * @param args
+   *          the configuration folder and optionally the snapshot file
+   * @throws Exception
+   */
+  public static void main (String[] args) throws Exception
+  {
+    if (args.length < 1) {
+      System.err.println("Usage: ProducerSnapshot config-folder "
+                         + "[snapshot-file]");
+      return;
+    }
+    File folder = new File(args[0]);
+    File snapshot =
+      args.length > 1 ? new File(args[1]) : new File(folder,
+                                                     SNAPSHOT_FILE_NAME);
+    List<File> files = ProducerService.listProducerFiles(folder);
+    write(files, snapshot);
+    System.out.println("Wrote " + files.size() + " producers to " + snapshot);
+  }
+
+  /**
+   * Writes the given producer xml files into a snapshot. The files are
+   * converted without creating the producers so no game is needed.
+   * 
+   * @param producerFiles
+   *          the producer xml files
+   * @param snapshot
+   *          the snapshot file to write
+   * @throws Exception
+   */
+  public static void write (List<File> producerFiles, File snapshot)
+    throws Exception
+  {
+    CurveTable curves = new CurveTable();
+    List<byte[]> bodies = new ArrayList<byte[]>(producerFiles.size());
+    int size = 4 * INT_BYTES;
+
+    for (File file: producerFiles) {
+      Element root =
+        ProducerService.parse(file.toURI().toURL()).document
+                .getDocumentElement();
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      BinaryStreamWriter writer = new BinaryStreamWriter(body);
+      copy(root, writer, curves, new XmlFriendlyNameCoder());
+      writer.close();
+      bodies.add(body.toByteArray());
+      size += INT_BYTES + body.size();
+    }
+    curves.out.close();
+    size += curves.bytes.size();
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(curves.count);
+    buffer.put(curves.bytes.toByteArray());
+    buffer.putInt(bodies.size());
+    for (byte[] body: bodies) {
+      buffer.putInt(body.length);
+      buffer.put(body);
+    }
+    buffer.flip();
+
+    FileOutputStream out = new FileOutputStream(snapshot);
+    try {
+      FileChannel channel = out.getChannel();
+      while (buffer.hasRemaining())
+        channel.write(buffer);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads the producers of a snapshot. Like the xml files every producer is
+   * initialized by its readResolve().
+   * 
+   * @param snapshot
+   *          the snapshot file
+   * @return the producers in the order their files were written
+   * @throws IOException
+   *           if the file isn't a snapshot of this version
+   */
+  public static List<Producer> read (File snapshot) throws IOException
+  {
+    List<Producer> producers = new ArrayList<Producer>();
+    RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      MappedByteBuffer buffer =
+        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      if (buffer.remaining() < 2 * INT_BYTES || buffer.getInt() != MAGIC)
+        throw new IOException("Not a producer snapshot: " + snapshot);
+      int version = buffer.getInt();
+      if (version != VERSION)
+        throw new IOException("Unsupported snapshot version " + version);
+
+      Curve[] curves = new Curve[buffer.getInt()];
+      for (int i = 0; i < curves.length; i++) {
+        curves[i] = CurveRegistry.intern(readCurve(buffer));
+      }
+
+      XStream xstream = getXStream();
+      int count = buffer.getInt();
+      for (int i = 0; i < count; i++) {
+        int length = buffer.getInt();
+        ByteBuffer body = buffer.slice();
+        body.limit(length);
+        buffer.position(buffer.position() + length);
+
+        DataHolder holder = xstream.newDataHolder();
+        holder.put(CURVE_TABLE, curves);
+        Producer producer =
+          (Producer) xstream.unmarshal(new BinaryStreamReader(
+                                                              new ByteBufferInputStream(
+                                                                                        body)),
+                                       null, holder);
+        producers.add(producer);
+      }
+    }
+    catch (BufferUnderflowException e) {
+      throw new IOException("Truncated producer snapshot: " + snapshot);
+    }
+    finally {
+      file.close();
+    }
+    return producers;
+  }
+
+  /**
+   * Copies an xml element into the binary writer replacing the curves with
+   * references to the curve table.
+   */
+  private static void copy (Element element, HierarchicalStreamWriter writer,
+                            CurveTable curves, NameCoder coder)
+    throws IOException
+  {
+    writer.startNode(coder.decodeNode(element.getTagName()));
+    if (isCurve(element)) {
+      writer.addAttribute(CURVE_REFERENCE, String.valueOf(curves.add(element)));
+      writer.endNode();
+      return;
+    }
+
+    NamedNodeMap attributes = element.getAttributes();
+    for (int i = 0; i < attributes.getLength(); i++) {
+      Node attribute = attributes.item(i);
+      writer.addAttribute(coder.decodeAttribute(attribute.getNodeName()),
+                          attribute.getNodeValue());
+    }
+
+    boolean hasChildren = false;
+    NodeList children = element.getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      if (children.item(i) instanceof Element) {
+        hasChildren = true;
+        copy((Element) children.item(i), writer, curves, coder);
+      }
+    }
+    if (!hasChildren)
+      writer.setValue(element.getTextContent());
+    writer.endNode();
+  }
+
+  /**
+   * A curve is an element that contains only entries with an x attribute as
+   * written by the {@link CurveConverter}.
+   */
+  private static boolean isCurve (Element element)
+  {
+    boolean hasEntries = false;
+    NodeList children = element.getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      if (children.item(i) instanceof Element) {
+        Element child = (Element) children.item(i);
+        if (!child.getTagName().equals("entry") || !child.hasAttribute("x"))
+          return false;
+        hasEntries = true;
+      }
+    }
+    return hasEntries;
+  }
+
+  /**
+   * Reads one curve of the curve table.
+   */
+  private static Curve readCurve (ByteBuffer buffer)
+  {
+    byte flags = buffer.get();
+    double firstValue = buffer.getDouble();
+    double lastValue = buffer.getDouble();
+    int n = buffer.getInt();
+    double[] x = new double[n];
+    double[] y = new double[n];
+    buffer.asDoubleBuffer().get(x);
+    buffer.position(buffer.position() + n * DOUBLE_BYTES);
+    buffer.asDoubleBuffer().get(y);
+    buffer.position(buffer.position() + n * DOUBLE_BYTES);
+
+    Curve c = n > 0 ? new Curve(x, y) : new Curve();
+    if ((flags & CANNOT_BE_NEGATIVE) != 0)
+      c.setCanBeNegative(false);
+    if ((flags & CUSTOM_FIRST_VALUE) != 0)
+      c.setCustomFirstValue(firstValue);
+    if ((flags & CUSTOM_LAST_VALUE) != 0)
+      c.setCustomLastValue(lastValue);
+    return c;
+  }
+
+  /**
+   * @return the xstream instance used to read the snapshots
+   */
+  static synchronized XStream getXStream ()
+  {
+    if (xstream == null) {
+      XStream configured = new XStream();
+      ProducerService.configure(configured);
+      configured.registerConverter(new CurveTableConverter(),
+                                   XStream.PRIORITY_VERY_HIGH);
+      xstream = configured;
+    }
+    return xstream;
+  }
+
+  /**
+   * Collects the curves of the snapshot as packed double arrays
+   */
+  private static class CurveTable
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    int count = 0;
+
+    /**
+     * Adds the curve element to the table and returns its index
+     */
+    int add (Element curve) throws IOException
+    {
+      byte flags = 0;
+      double firstValue = 0;
+      double lastValue = 0;
+      if (curve.hasAttribute("canBeNegative"))
+        flags |= CANNOT_BE_NEGATIVE;
+      if (curve.hasAttribute("first-value")) {
+        flags |= CUSTOM_FIRST_VALUE;
+        firstValue = Double.parseDouble(curve.getAttribute("first-value"));
+      }
+      if (curve.hasAttribute("last-value")) {
+        flags |= CUSTOM_LAST_VALUE;
+        lastValue = Double.parseDouble(curve.getAttribute("last-value"));
+      }
+
+      List<Element> entries = new ArrayList<Element>();
+      NodeList children = curve.getChildNodes();
+      for (int i = 0; i < children.getLength(); i++) {
+        if (children.item(i) instanceof Element)
+          entries.add((Element) children.item(i));
+      }
+
+      out.writeByte(flags);
+      out.writeDouble(firstValue);
+      out.writeDouble(lastValue);
+      out.writeInt(entries.size());
+      for (Element entry: entries)
+        out.writeDouble(Double.parseDouble(entry.getAttribute("x")));
+      for (Element entry: entries)
+        out.writeDouble(Double.parseDouble(entry.getTextContent()));
+      return count++;
+    }
+  }
+
+  /**
+   * Resolves the curve references of a snapshot. Curves written in the xml way
+   * are handled by the {@link CurveConverter}.
+   */
+  private static class CurveTableConverter extends CurveConverter
+  {
+    @Override
+    public Object unmarshal (HierarchicalStreamReader reader,
+                             UnmarshallingContext context)
+    {
+      String reference = reader.getAttribute(CURVE_REFERENCE);
+      Curve[] curves = (Curve[]) context.get(CURVE_TABLE);
+      if (reference == null || curves == null)
+        return super.unmarshal(reader, context);
+      return curves[Integer.parseInt(reference)];
+    }
+  }
+
+  /**
+   * Reads the bytes of a buffer as a stream
+   */
+  private static class ByteBufferInputStream extends InputStream
+  {
+    private ByteBuffer buffer;
+
+    ByteBufferInputStream (ByteBuffer buffer)
+    {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read ()
+    {
+      if (!buffer.hasRemaining())
+        return -1;
+      return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read (byte[] b, int off, int len)
+    {
+      if (!buffer.hasRemaining())
+        return -1;
+      len = Math.min(len, buffer.remaining());
+      buffer.get(b, off, len);
+      return len;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import java.util.TimeZone;
+
+import org.joda.time.Instant;
+
+/**
+ * The start time of a timeslot in the forms that the producers need. The
+ * conversions are done once when the context is created so that the
+ * producers don't repeat them for every set-point of a profile.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class TimeContext
+{
+  private final int timeslotIndex;
+  private final Instant instant;
+  private final long millis;
+  private final TimeZone timezone;
+  private final int dayOfYear;
+
+  /**
+   * @param timeslotIndex
+   *          the timeslot
+   * @param instant
+   *          the start of the timeslot
+   */
+  public TimeContext (int timeslotIndex, Instant instant)
+  {
+    if (instant == null)
+      throw new IllegalArgumentException("No time for timeslot "
+                                         + timeslotIndex);
+    this.timeslotIndex = timeslotIndex;
+    this.instant = instant;
+    this.millis = instant.getMillis();
+    this.timezone = instant.getZone().toTimeZone();
+    this.dayOfYear = instant.toDateTime().getDayOfYear();
+  }
+
+  /**
+   * @return the timeslot index
+   */
+  public int getTimeslotIndex ()
+  {
+    return timeslotIndex;
+  }
+
+  /**
+   * @return the start of the timeslot
+   */
+  public Instant getInstant ()
+  {
+    return instant;
+  }
+
+  /**
+   * @return the start of the timeslot in milliseconds
+   */
+  public long getMillis ()
+  {
+    return millis;
+  }
+
+  /**
+   * @return the time zone of the start time
+   */
+  public TimeZone getTimezone ()
+  {
+    return timezone;
+  }
+
+  /**
+   * @return the day of the year of the start time
+   */
+  public int getDayOfYear ()
+  {
+    return dayOfYear;
+  }
+}
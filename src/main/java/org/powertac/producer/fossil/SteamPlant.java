@@ -123,6 +123,16 @@ public class SteamPlant extends Producer
     return outSum / MINUTES_IN_HOUR;
   }
 
+  /**
+   * The output depends on the previous output and on random samples so it
+   * must be computed for every tariff.
+   */
+  @Override
+  protected boolean isForecastReusable ()
+  {
+    return false;
+  }
+
   /**
    * This function is called after de-serialization
    */
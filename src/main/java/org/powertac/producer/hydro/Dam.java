@@ -19,6 +19,7 @@ import org.powertac.common.IdGenerator;
 import org.powertac.common.WeatherForecastPrediction;
 import org.powertac.common.WeatherReport;
 import org.powertac.common.enumerations.PowerType;
+import org.powertac.producer.TimeContext;
 import org.powertac.producer.utils.Curve;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
@@ -135,8 +136,17 @@ public class Dam extends HydroBase
                WeatherForecastPrediction weatherForecastPrediction,
                double previousOutput)
   {
-    return getOutput(this.timeslotRepo.getTimeForIndex(timeslotIndex)
-            .toDateTime().getDayOfYear());
+    return getOutput(new TimeContext(timeslotIndex, this.timeslotRepo
+            .getTimeForIndex(timeslotIndex)), weatherForecastPrediction,
+                     previousOutput);
+  }
+
+  @Override
+  public double getOutput (TimeContext time,
+                           WeatherForecastPrediction weatherForecastPrediction,
+                           double previousOutput)
+  {
+    return getOutput(time.getDayOfYear());
   }
 
   /**
@@ -0,0 +1,400 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.hydro;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.powertac.common.IdGenerator;
+import org.powertac.common.WeatherForecastPrediction;
+import org.powertac.common.WeatherReport;
+import org.powertac.common.enumerations.PowerType;
+import org.powertac.producer.Producer;
+import org.powertac.producer.TimeContext;
+import org.powertac.producer.utils.Curve;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import com.thoughtworks.xstream.annotations.XStreamImplicit;
+import com.thoughtworks.xstream.annotations.XStreamOmitField;
+
+import static org.powertac.producer.hydro.HydroBase.G;
+import static org.powertac.producer.hydro.HydroBase.WATER_DENSITY;
+
+/**
+ * This producer models a cascade of dams on the same river. The reservoirs
+ * are ordered from upstream to downstream and the water released by each one
+ * is the inflow of the next. The state of all the reservoirs is kept in
+ * parallel arrays so that the whole river is stepped in one pass.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+@XStreamAlias("dam-cascade")
+public class DamCascade extends Producer
+{
+  private static final int UNIT_HEIGHT = 1;
+  private static final int DEFAULT_CASCADE_PROFILE_HOURS = 24;
+  private static final double DEFAULT_CASCADE_COST_PER_KWH = 0.03;
+
+  // The river flow that enters the first reservoir for every day of the year
+  private Curve inputFlow;
+
+  // The reservoirs from upstream to downstream
+  @XStreamImplicit
+  private List<Reservoir> reservoirs = new ArrayList<Reservoir>();
+
+  // The per reservoir state and configuration, see pack()
+  @XStreamOmitField
+  private double[] volume;
+  @XStreamOmitField
+  private double[] height;
+  @XStreamOmitField
+  private double[] minFlow;
+  @XStreamOmitField
+  private double[] maxFlow;
+  @XStreamOmitField
+  private double[] staticLosses;
+  // The part of the preferred output assigned to each reservoir
+  @XStreamOmitField
+  private double[] outputShare;
+  @XStreamOmitField
+  private Curve[] turbineEfficiency;
+  @XStreamOmitField
+  private Curve[] volumeHeight;
+  @XStreamOmitField
+  private Curve[] lateralInflow;
+  @XStreamOmitField
+  private Curve[] invCurveOut;
+
+  // The state used while forecasting so that the real one isn't modified
+  @XStreamOmitField
+  private double[] forecastVolume;
+  @XStreamOmitField
+  private double[] forecastHeight;
+  @XStreamOmitField
+  private int lastForecastTimeslot = Integer.MAX_VALUE;
+  @XStreamOmitField
+  private double lastForecastPreferredOutput;
+
+  /**
+   * Construct an empty dam cascade.
+   * 
+   * @param inputFlow
+   *          the river flow graph entering the first reservoir for a whole
+   *          year
+   */
+  public DamCascade (Curve inputFlow)
+  {
+    super("Dam cascade", PowerType.RUN_OF_RIVER_PRODUCTION,
+          DEFAULT_CASCADE_PROFILE_HOURS, 0);
+    if (inputFlow == null)
+      throw new IllegalArgumentException();
+    this.inputFlow = inputFlow;
+    this.costPerKwh = DEFAULT_CASCADE_COST_PER_KWH;
+    pack();
+  }
+
+  /**
+   * Adds a reservoir at the downstream end of the cascade. This resets the
+   * state of all the reservoirs to their initial volume.
+   * 
+   * @param reservoir
+   *          the reservoir to add
+   */
+  public void addReservoir (Reservoir reservoir)
+  {
+    if (reservoir == null)
+      return;
+    reservoirs.add(reservoir);
+    upperPowerCap += reservoir.getCapacity();
+    pack();
+  }
+
+  /**
+   * Copies the reservoir configuration into the parallel arrays and sets the
+   * state to the initial volumes.
+   */
+  protected void pack ()
+  {
+    int n = reservoirs.size();
+    volume = new double[n];
+    height = new double[n];
+    minFlow = new double[n];
+    maxFlow = new double[n];
+    staticLosses = new double[n];
+    outputShare = new double[n];
+    turbineEfficiency = new Curve[n];
+    volumeHeight = new Curve[n];
+    lateralInflow = new Curve[n];
+    invCurveOut = new Curve[n];
+    forecastVolume = new double[n];
+    forecastHeight = new double[n];
+
+    double capacitySum = 0;
+    for (Reservoir r: reservoirs)
+      capacitySum += r.getCapacity();
+
+    for (int i = 0; i < n; i++) {
+      Reservoir r = reservoirs.get(i);
+      volume[i] = r.getInitialVolume();
+      height[i] = r.getVolumeHeight().value(volume[i]);
+      minFlow[i] = r.getMinFlow();
+      maxFlow[i] = r.getMaxFlow();
+      staticLosses[i] = r.getStaticLosses();
+      outputShare[i] = capacitySum != 0 ? r.getCapacity() / capacitySum : 0;
+      turbineEfficiency[i] = r.getTurbineEfficiency();
+      volumeHeight[i] = r.getVolumeHeight();
+      lateralInflow[i] = r.getLateralInflow();
+      invCurveOut[i] = calculateInvOut(i);
+    }
+    lastForecastTimeslot = Integer.MAX_VALUE;
+  }
+
+  /**
+   * Calculate the inverse output graph for unit height of the given reservoir
+   * so that we know for which flow we get the output required.
+   * 
+   * @param i
+   *          the reservoir index
+   * @return the inverse output curve
+   */
+  protected Curve calculateInvOut (int i)
+  {
+    Curve c = new Curve();
+    for (double flow = minFlow[i]; flow <= maxFlow[i]; flow +=
+      STEP * (maxFlow[i] - minFlow[i])) {
+      double pow =
+        getWaterPower(i, turbineEfficiency[i].value(flow / maxFlow[i]), flow,
+                      UNIT_HEIGHT)
+                * timeslotLengthInMin
+                / (WATT_IN_KILOWATT * MINUTES_IN_HOUR);
+      c.add(flow, pow);
+    }
+    return c.getInvertiblePart();
+  }
+
+  /**
+   * Calculate the water power that is captured by the turbines of the given
+   * reservoir
+   * 
+   * @param i
+   *          the reservoir index
+   * @param turbineEff
+   *          the turbine efficiency > 0 & <= 1
+   * @param flow
+   *          the water flow > 0
+   * @param heigth
+   *          the height difference between input and output > 0
+   * @return
+   */
+  protected double getWaterPower (int i, double turbineEff, double flow,
+                                  double heigth)
+  {
+    if (flow >= minFlow[i] && flow <= maxFlow[i])
+      return staticLosses[i] * turbineEff * WATER_DENSITY * G * heigth * flow;
+    else if (flow > maxFlow[i])
+      return staticLosses[i] * turbineEff * WATER_DENSITY * G * heigth
+             * maxFlow[i];
+    else
+      return 0;
+  }
+
+  /**
+   * Steps every reservoir of the cascade by one timeslot.
+   * 
+   * @param day
+   *          day of the year
+   * @return the energy output of the whole cascade in kwh <= 0
+   */
+  protected double getOutput (int day)
+  {
+    return getOutput(day, volume, height);
+  }
+
+  /**
+   * Steps every reservoir of the cascade by one timeslot, updating the given
+   * state arrays.
+   * 
+   * @param day
+   *          day of the year
+   * @param volume
+   *          the reservoir volumes, updated in place
+   * @param height
+   *          the reservoir heights, updated in place
+   * @return the energy output of the whole cascade in kwh <= 0
+   */
+  protected double getOutput (int day, double[] volume, double[] height)
+  {
+    if (day < 0 || day > 366)
+      throw new IllegalArgumentException();
+
+    double inflow = inputFlow.value(day);
+    double power = 0;
+    for (int i = 0; i < volume.length; i++) {
+      if (lateralInflow[i] != null)
+        inflow += lateralInflow[i].value(day);
+
+      // Same logic as the Dam for every reservoir
+      double flow;
+      if (height[i] != 0)
+        flow =
+          invCurveOut[i].value(-preferredOutput * outputShare[i]
+                               * MINUTES_IN_HOUR
+                               / (height[i] * timeslotLengthInMin));
+      else
+        flow = inflow;
+
+      double turbEff = turbineEfficiency[i].value(flow / maxFlow[i]);
+      power -=
+        getWaterPower(i, turbEff, flow, height[i]) * timeslotLengthInMin
+                / (MINUTES_IN_HOUR * WATT_IN_KILOWATT);
+
+      volume[i] += (inflow - flow) * timeslotLengthInMin * SECONDS_IN_MINUTE;
+      height[i] = volumeHeight[i].value(volume[i]);
+
+      // The released water enters the next reservoir
+      inflow = flow;
+    }
+
+    if (power > 0 || Double.isInfinite(power) || Double.isNaN(power))
+      throw new IllegalStateException("Invalid Power");
+    return power;
+  }
+
+  /**
+   * Forecasts the output of the whole cascade for consecutive timeslots
+   * without modifying the current state of the reservoirs.
+   * 
+   * @param days
+   *          the day of the year of every timeslot
+   * @return the energy output of every timeslot in kwh <= 0
+   */
+  public double[] forecast (int[] days)
+  {
+    System.arraycopy(volume, 0, forecastVolume, 0, volume.length);
+    System.arraycopy(height, 0, forecastHeight, 0, height.length);
+    // invalidate the state of getOutput(int, WeatherForecastPrediction, double)
+    lastForecastTimeslot = Integer.MAX_VALUE;
+
+    double[] out = new double[days.length];
+    for (int t = 0; t < days.length; t++) {
+      out[t] = getOutput(days[t], forecastVolume, forecastHeight);
+    }
+    return out;
+  }
+
+  @Override
+  public double getOutput (WeatherReport weatherReport)
+  {
+    return getOutput(this.timeService.getCurrentDateTime().getDayOfYear());
+  }
+
+  /**
+   * The forecast continues from the previous call as long as the timeslots
+   * increase and the preferred output is the same. Otherwise it starts again
+   * from the current state of the reservoirs.
+   */
+  @Override
+  public double
+    getOutput (int timeslotIndex,
+               WeatherForecastPrediction weatherForecastPrediction,
+               double previousOutput)
+  {
+    return getOutput(new TimeContext(timeslotIndex, this.timeslotRepo
+            .getTimeForIndex(timeslotIndex)), weatherForecastPrediction,
+                     previousOutput);
+  }
+
+  @Override
+  public double getOutput (TimeContext time,
+                           WeatherForecastPrediction weatherForecastPrediction,
+                           double previousOutput)
+  {
+    int timeslotIndex = time.getTimeslotIndex();
+    if (timeslotIndex <= lastForecastTimeslot
+        || preferredOutput != lastForecastPreferredOutput) {
+      System.arraycopy(volume, 0, forecastVolume, 0, volume.length);
+      System.arraycopy(height, 0, forecastHeight, 0, height.length);
+    }
+    lastForecastTimeslot = timeslotIndex;
+    lastForecastPreferredOutput = preferredOutput;
+
+    return getOutput(time.getDayOfYear(), forecastVolume, forecastHeight);
+  }
+
+  /**
+   * The forecast output updates the volumes and the heights of the
+   * reservoirs so it must be computed for every tariff.
+   */
+  @Override
+  protected boolean isForecastReusable ()
+  {
+    return false;
+  }
+
+  /**
+   * This function is called after de-serialization
+   */
+  protected Object readResolve ()
+  {
+    this.name = "Dam cascade";
+    initialize(name, PowerType.RUN_OF_RIVER_PRODUCTION,
+               DEFAULT_CASCADE_PROFILE_HOURS, upperPowerCap,
+               IdGenerator.createId());
+    // xstream leaves the implicit list null when the file has no reservoirs
+    if (reservoirs == null)
+      reservoirs = new ArrayList<Reservoir>();
+    pack();
+    return this;
+  }
+
+  /**
+   * @return the reservoirs from upstream to downstream
+   */
+  public List<Reservoir> getReservoirs ()
+  {
+    return Collections.unmodifiableList(reservoirs);
+  }
+
+  /**
+   * @return the inputFlow
+   */
+  public Curve getInputFlow ()
+  {
+    return inputFlow;
+  }
+
+  /**
+   * @param i
+   *          the reservoir index
+   * @return the current volume of the reservoir
+   */
+  public double getVolume (int i)
+  {
+    return volume[i];
+  }
+
+  /**
+   * @param i
+   *          the reservoir index
+   * @return the current height of the reservoir
+   */
+  public double getHeight (int i)
+  {
+    return height[i];
+  }
+}
@@ -29,8 +29,8 @@ import org.powertac.producer.utils.Curve;
 public abstract class HydroBase extends Producer
 {
   private static final int DEFAULT_HYDRO_PROFILE_HOURS = 24;
-  private static final double WATER_DENSITY = 999.972;
-  private static final double G = 9.80665;
+  static final double WATER_DENSITY = 999.972;
+  static final double G = 9.80665;
 
   // The input flow graph for every day of the year
   protected Curve inputFlow;
@@ -90,6 +90,16 @@ public abstract class HydroBase extends Producer
     this.staticLosses = staticLosses;
   }
 
+  /**
+   * The forecast output updates the volume and the height of the plant so it
+   * must be computed for every tariff.
+   */
+  @Override
+  protected boolean isForecastReusable ()
+  {
+    return false;
+  }
+
   /**
    * Calculate the hydro plants output based on the day of the year
    * 
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.hydro;
+
+import org.powertac.producer.utils.Curve;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Describes one reservoir of a {@link DamCascade}. It holds only the
+ * configuration of the reservoir, the simulation state is kept by the cascade.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+@XStreamAlias("reservoir")
+public class Reservoir
+{
+  // The minimum flow needed to operate the turbines
+  private double minFlow;
+  // The maximum flow that the turbines can handle
+  private double maxFlow;
+  // The turbine efficiency graph as a function of the percentage of the maxFlow
+  private Curve turbineEfficiency;
+  // a volume-height graph volumeHeight.value(volume) = height
+  private Curve volumeHeight;
+  // The volume of the reservoir at the start of the game
+  private double initialVolume;
+  // The plants height losses
+  private double staticLosses;
+  // The rated capacity of the reservoir's plant < 0
+  private double capacity;
+  // Optional local inflow from tributaries between this and the upstream
+  // reservoir for every day of the year
+  private Curve lateralInflow;
+
+  /**
+   * Construct a reservoir with the below arguments.
+   * 
+   * @param minFlow
+   *          the minimal flow needed to operate the turbines
+   * @param maxFlow
+   *          the maximum flow that the turbines can handle
+   * @param turbineEfficiency
+   *          the turbine efficiency graph as a function of the
+   *          percentage of maximum flow
+   * @param volumeHeight
+   *          the volume height graph
+   * @param initialVolume
+   *          the initial reservoir volume
+   * @param capacity
+   *          the plant rated capacity < 0
+   * @param staticLosses
+   *          the static plant losses
+   */
+  public Reservoir (double minFlow, double maxFlow, Curve turbineEfficiency,
+                    Curve volumeHeight, double initialVolume, double capacity,
+                    double staticLosses)
+  {
+    if (minFlow < 0 || maxFlow < minFlow || turbineEfficiency == null
+        || volumeHeight == null || initialVolume < 0 || capacity > 0
+        || staticLosses < 0 || staticLosses > 1)
+      throw new IllegalArgumentException();
+    this.minFlow = minFlow;
+    this.maxFlow = maxFlow;
+    this.turbineEfficiency = turbineEfficiency;
+    this.volumeHeight = volumeHeight;
+    this.initialVolume = initialVolume;
+    this.capacity = capacity;
+    this.staticLosses = staticLosses;
+  }
+
+  /**
+   * @return the minFlow
+   */
+  public double getMinFlow ()
+  {
+    return minFlow;
+  }
+
+  /**
+   * @return the maxFlow
+   */
+  public double getMaxFlow ()
+  {
+    return maxFlow;
+  }
+
+  /**
+   * @return the turbineEfficiency
+   */
+  public Curve getTurbineEfficiency ()
+  {
+    return turbineEfficiency;
+  }
+
+  /**
+   * @return the volumeHeight
+   */
+  public Curve getVolumeHeight ()
+  {
+    return volumeHeight;
+  }
+
+  /**
+   * @return the initialVolume
+   */
+  public double getInitialVolume ()
+  {
+    return initialVolume;
+  }
+
+  /**
+   * @return the staticLosses
+   */
+  public double getStaticLosses ()
+  {
+    return staticLosses;
+  }
+
+  /**
+   * @return the capacity
+   */
+  public double getCapacity ()
+  {
+    return capacity;
+  }
+
+  /**
+   * @return the lateralInflow, may be null
+   */
+  public Curve getLateralInflow ()
+  {
+    return lateralInflow;
+  }
+
+  /**
+   * @param lateralInflow
+   *          the lateralInflow to set, null for no local inflow
+   */
+  public void setLateralInflow (Curve lateralInflow)
+  {
+    this.lateralInflow = lateralInflow;
+  }
+}
@@ -17,13 +17,13 @@ package org.powertac.producer.pvfarm;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.TimeZone;
 
 import org.powertac.common.IdGenerator;
 import org.powertac.common.WeatherForecastPrediction;
 import org.powertac.common.WeatherReport;
 import org.powertac.common.enumerations.PowerType;
 import org.powertac.producer.Producer;
+import org.powertac.producer.TimeContext;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamImplicit;
@@ -85,16 +85,14 @@ public class SolarFarm extends Producer
   public double getOutput (WeatherReport weatherReport)
   {
     double powerSum = 0;
-    long systemTime =
-      timeslotRepo.getTimeForIndex(weatherReport.getTimeslotIndex())
-              .getMillis();
-    TimeZone timezone =
-      timeslotRepo.getTimeForIndex(weatherReport.getTimeslotIndex()).getZone()
-              .toTimeZone();
+    TimeContext time =
+      new TimeContext(weatherReport.getTimeslotIndex(),
+                      timeslotRepo.getTimeForIndex(weatherReport
+                              .getTimeslotIndex()));
     for (PvPanel panel: panelList) {
       powerSum +=
-        panel.getOutput(systemTime,
-                        timezone,
+        panel.getOutput(time.getMillis(),
+                        time.getTimezone(),
                         weatherReport.getCloudCover(),
                         // FIX for celcius to kelvin
                         weatherReport.getTemperature() + CELCIUS_TO_KELVIN_CONS,
@@ -116,14 +114,21 @@ public class SolarFarm extends Producer
     getOutput (int timeslotIndex,
                WeatherForecastPrediction weatherForecastPrediction,
                double previousOutput)
+  {
+    return getOutput(new TimeContext(timeslotIndex, timeslotRepo
+            .getTimeForIndex(timeslotIndex)), weatherForecastPrediction,
+                     previousOutput);
+  }
+
+  @Override
+  public double getOutput (TimeContext time,
+                           WeatherForecastPrediction weatherForecastPrediction,
+                           double previousOutput)
   {
     double powerSum = 0;
-    long systemTime = timeslotRepo.getTimeForIndex(timeslotIndex).getMillis();
-    TimeZone timezone =
-      timeslotRepo.getTimeForIndex(timeslotIndex).getZone().toTimeZone();
     for (PvPanel panel: panelList) {
       powerSum +=
-        panel.getOutput(systemTime, timezone,
+        panel.getOutput(time.getMillis(), time.getTimezone(),
                         weatherForecastPrediction.getCloudCover(),
                         // FIX for celcius to kelvin
                         weatherForecastPrediction.getTemperature()
@@ -141,6 +146,9 @@ public class SolarFarm extends Producer
     this.name = "Solar farm";
     initialize(name, PowerType.FOSSIL_PRODUCTION, SOLAR_DEFAULT_PROFILE_HOURS, upperPowerCap,
                IdGenerator.createId());
+    // xstream leaves the implicit list null when the file has no panels
+    if (panelList == null)
+      panelList = new ArrayList<PvPanel>();
     for (PvPanel panel: panelList) {
       panel.setTimeslotLengthInMin(timeslotLengthInMin);
     }
@@ -59,10 +59,10 @@ public class Curve
   protected LinkedHashMap<Double, Double> xy =
     new LinkedHashMap<Double, Double>();
 
-  // Need to rebuild the spline
-  boolean needRebuild = true;
+  // Need to rebuild the spline, the interned curves are read by many threads
+  volatile boolean needRebuild = true;
 
-  private PolynomialSplineFunction spline;
+  private volatile PolynomialSplineFunction spline;
 
   private SplineInterpolator interpolator = new SplineInterpolator();
 
@@ -128,6 +128,21 @@ public class Curve
     spline = interpolator.interpolate(x, y);
   }
 
+  /**
+   * Builds the spline once even if many threads ask for a value of the curve
+   * at the same time
+   * 
+   * @return the spline
+   */
+  private synchronized PolynomialSplineFunction buildSpline ()
+  {
+    if (needRebuild) {
+      createSpline();
+      needRebuild = false;
+    }
+    return spline;
+  }
+
   /**
    * Get the interpolated value of the curve at the point x of the horizontal
    * axis
@@ -138,10 +153,9 @@ public class Curve
    */
   public double value (double xVal)
   {
-    if (needRebuild) {
-      createSpline();
-      needRebuild = false;
-    }
+    PolynomialSplineFunction function = spline;
+    if (function == null || needRebuild)
+      function = buildSpline();
 
     if (xVal < firstX) {
       if (prolongFirstValue)
@@ -157,7 +171,7 @@ public class Curve
         return customLastValue;
     }
 
-    double value = spline.value(xVal);
+    double value = function.value(xVal);
 
     if (!canBeNegative && value < 0) {
       return 0;
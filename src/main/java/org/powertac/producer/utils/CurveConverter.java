@@ -24,7 +24,8 @@ import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 
 /**
- * Serializes and deserializes the {@link Curve} class.
+ * Serializes and deserializes the {@link Curve} class. The de-serialized curves
+ * are shared through the {@link CurveRegistry}.
  * 
  * @author Doom
  * 
@@ -90,7 +91,7 @@ public class CurveConverter implements Converter
       reader.moveUp();
     }
 
-    return c;
+    return CurveRegistry.intern(c);
   }
 
 }
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps one instance of every distinct curve that has been de-serialized. The
+ * {@link CurveConverter} returns the registered instance when it reads a curve
+ * with the same points and settings as a previous one, so identical power
+ * curves of different turbines and producers share the same spline. The
+ * registered curves must not be modified.
+ * 
+ * @author Spyros Papageorgiou
+ * 
+ */
+public class CurveRegistry
+{
+  // The distinct curves by their content
+  private static Map<Key, Curve> curves = new HashMap<Key, Curve>();
+
+  // The number of curves that were interned
+  private static int totalCount = 0;
+
+  private CurveRegistry ()
+  {
+  }
+
+  /**
+   * Returns the registered curve with the same content as the given one. If
+   * there is none the given curve is registered.
+   * 
+   * @param curve
+   *          the curve
+   * @return the shared curve instance
+   */
+  public static synchronized Curve intern (Curve curve)
+  {
+    totalCount++;
+    Key key = new Key(curve);
+    Curve shared = curves.get(key);
+    if (shared == null) {
+      curves.put(key, curve);
+      shared = curve;
+    }
+    return shared;
+  }
+
+  /**
+   * Forgets all the registered curves and resets the counts.
+   */
+  public static synchronized void clear ()
+  {
+    curves.clear();
+    totalCount = 0;
+  }
+
+  /**
+   * @return the number of distinct curves
+   */
+  public static synchronized int getUniqueCount ()
+  {
+    return curves.size();
+  }
+
+  /**
+   * @return the number of curves that were interned
+   */
+  public static synchronized int getTotalCount ()
+  {
+    return totalCount;
+  }
+
+  /**
+   * The content of a curve as a hash map key
+   */
+  private static class Key
+  {
+    private Curve curve;
+    private int hash;
+
+    Key (Curve curve)
+    {
+      this.curve = curve;
+      int h = curve.xy.hashCode();
+      h = 31 * h + (curve.getCanBeNegative() ? 1 : 0);
+      h = 31 * h + (curve.getProlongFirstValue() ? 1 : 0);
+      h = 31 * h + (curve.getProlongLastValue() ? 1 : 0);
+      h = 31 * h + Double.valueOf(curve.getCustomFirstValue()).hashCode();
+      h = 31 * h + Double.valueOf(curve.getCustomLastValue()).hashCode();
+      this.hash = h;
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals (Object obj)
+    {
+      if (!(obj instanceof Key))
+        return false;
+      Curve other = ((Key) obj).curve;
+      if (curve.getCanBeNegative() != other.getCanBeNegative()
+          || curve.getProlongFirstValue() != other.getProlongFirstValue()
+          || curve.getProlongLastValue() != other.getProlongLastValue()
+          || Double.compare(curve.getCustomFirstValue(),
+                            other.getCustomFirstValue()) != 0
+          || Double.compare(curve.getCustomLastValue(),
+                            other.getCustomLastValue()) != 0
+          || curve.xy.size() != other.xy.size())
+        return false;
+
+      // the points must be the same and in the same order
+      Iterator<Map.Entry<Double, Double>> a = curve.xy.entrySet().iterator();
+      Iterator<Map.Entry<Double, Double>> b = other.xy.entrySet().iterator();
+      while (a.hasNext()) {
+        if (!a.next().equals(b.next()))
+          return false;
+      }
+      return true;
+    }
+  }
+}
@@ -155,6 +155,9 @@ public class WindFarm extends Producer
     initialize(name, PowerType.WIND_PRODUCTION,
                DEFAULT_WIND_FARM_PROFILE_HOURS, upperPowerCap,
                IdGenerator.createId());
+    // xstream leaves the implicit list null when the file has no turbines
+    if (turbines == null)
+      turbines = new ArrayList<WindTurbine>();
     for (WindTurbine wt: turbines) {
       wt.setRs(seed);
       wt.setTimeslotLengthInMin(timeslotLengthInMin);
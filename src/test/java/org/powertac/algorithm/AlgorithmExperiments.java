@@ -21,7 +21,10 @@ import org.junit.Test;
 import java.io.File;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.runner.RunWith;
 import org.powertac.common.Competition;
@@ -80,10 +83,11 @@ public class AlgorithmExperiments
 
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -128,10 +132,11 @@ public class AlgorithmExperiments
 
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -175,10 +180,11 @@ public class AlgorithmExperiments
       perfectSol.add(workSet.get(i));
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -231,10 +237,11 @@ public class AlgorithmExperiments
       perfectSol.add(workSet.get(i));
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -287,10 +294,11 @@ public class AlgorithmExperiments
       perfectSol.add(workSet.get(i));
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -343,10 +351,11 @@ public class AlgorithmExperiments
       perfectSol.add(workSet.get(i));
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -399,10 +408,11 @@ public class AlgorithmExperiments
       perfectSol.add(workSet.get(i));
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -455,10 +465,11 @@ public class AlgorithmExperiments
       perfectSol.add(workSet.get(i));
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -511,10 +522,11 @@ public class AlgorithmExperiments
       perfectSol.add(workSet.get(i));
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -566,10 +578,11 @@ public class AlgorithmExperiments
       perfectSol.add(workSet.get(i));
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -621,10 +634,11 @@ public class AlgorithmExperiments
       perfectSol.add(workSet.get(i));
     }
 
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
     EnergyConstraint enrgCon =
-            new EnergyConstraint(workSet, -20 * 5000 - 1, report);
+            new EnergyConstraint(workSet, -20 * 5000 - 1, snapshot);
     EnrgEmsMinFunction minFun =
-            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, report, workSet);
+            new EnrgEmsMinFunction(-20 * 5000 - 1, 16, 1, 1, snapshot, workSet);
 
     AntColonyOptimizationSS<Producer> algo =
             new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
@@ -676,4 +690,184 @@ public class AlgorithmExperiments
     }
     pw.close();
   }
+
+  /*
+   * Runs a solver a few times and returns the median time in milliseconds
+   * and the grade of its last solution
+   */
+  double[] timeSolver (SubsetSelection<Producer> solver,
+                       ObjectiveMinFunction<Producer> minFun, int runs)
+  {
+    double[] times = new double[runs];
+    List<Producer> sol = null;
+    for (int i = 0; i < runs; i++) {
+      long start = System.nanoTime();
+      sol = solver.execute();
+      times[i] = (System.nanoTime() - start) / 1000000.0;
+    }
+    return new double[] { StatUtils.percentile(times, 50),
+                          minFun.gradeSolution(sol) };
+  }
+
+  @Test
+  public void testSolvers () throws Exception
+  {
+    int[] sizes = { 8, 16, 24, 32, 40, 100, 400, 2000 };
+    String[] names = { "exact", "aco", "greedy", "selected" };
+    Random random = new Random(42);
+
+    new File("data/").mkdir();
+    PrintWriter pw = new PrintWriter("data/algo_solvers.txt");
+    pw.println("size,solver,millis,grade,gap");
+    for (int size: sizes) {
+      List<Producer> workSet = new ArrayList<Producer>();
+      double capacity = 0;
+      for (int i = 0; i < size; i++) {
+        double cap = -1000 - random.nextInt(5000);
+        addProducers(1, random.nextBoolean() ? 1.5 : 0,
+                     0.02 + random.nextDouble() * 0.12, cap, workSet);
+        capacity += cap;
+      }
+      double limit = capacity / 3;
+
+      OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
+      SortedEnergyConstraint enrgCon =
+        new SortedEnergyConstraint(workSet, limit, snapshot);
+      EnrgEmsMinFunction minFun =
+        new EnrgEmsMinFunction(limit, 16, 1, 1, snapshot, workSet);
+
+      // the exact search takes too long above 40 producers
+      double[][] results = new double[4][];
+      if (size <= 40)
+        results[0] =
+          timeSolver(new BranchAndBoundSS<Producer>(workSet, enrgCon, minFun),
+                     minFun, 5);
+      results[1] =
+        timeSolver(new IndexedAntColonyOptimizationSS<Producer>(workSet,
+                                                                enrgCon,
+                                                                minFun, 1, 1,
+                                                                0.1, 10, 0.1,
+                                                                10), minFun, 5);
+      results[2] =
+        timeSolver(new GreedySS<Producer>(workSet, enrgCon, minFun), minFun,
+                   5);
+      results[3] =
+        timeSolver(SolverSelector.select(workSet, enrgCon, minFun), minFun, 5);
+
+      double best = Double.POSITIVE_INFINITY;
+      for (double[] result: results) {
+        if (result != null)
+          best = Math.min(best, result[1]);
+      }
+      for (int i = 0; i < 4; i++) {
+        if (results[i] == null)
+          continue;
+        String line =
+          size + "," + names[i] + "," + results[i][0] + "," + results[i][1]
+                  + "," + (results[i][1] - best) / best;
+        System.out.println(line);
+        pw.println(line);
+      }
+    }
+    pw.close();
+  }
+
+  /*
+   * Returns the number of iterations the trace needs to reach the grade or
+   * one more than its length if it doesn't
+   */
+  int iterationsTo (double[] trace, double grade)
+  {
+    for (int i = 0; i < trace.length; i++) {
+      if (trace[i] <= grade)
+        return i + 1;
+    }
+    return trace.length + 1;
+  }
+
+  @Test
+  public void testWarmStart () throws Exception
+  {
+    int timeslots = 30;
+    int maxIterations = 50;
+    double[] decays = { 0, 0.05, 0.2, 1 };
+    Random random = new Random(42);
+
+    List<Producer> workSet = new ArrayList<Producer>();
+    addProducers(20, 0, 0.03, -5000, workSet);
+    addProducers(20, 1.5, 0.1, -4000, workSet);
+    addProducers(20, 0, 0.14, -2000, workSet);
+    addProducers(20, 0, 0.08, -3000, workSet);
+    double limit = -20 * 5000 - 1;
+    Map<Producer, Double> outputs = new HashMap<Producer, Double>();
+    for (Producer prod: workSet) {
+      outputs.put(prod, prod.getUpperPowerCap());
+    }
+
+    List<PheromoneMemory<Producer>> memories =
+      new ArrayList<PheromoneMemory<Producer>>();
+    for (double decay: decays) {
+      memories.add(new PheromoneMemory<Producer>(PheromoneMemory.PRODUCER_ID,
+                                                 decay));
+    }
+    double[] coldIterations = new double[timeslots];
+    double[][] warmIterations = new double[decays.length][timeslots];
+
+    new File("data/").mkdir();
+    PrintWriter pw = new PrintWriter("data/algo_warm_start.txt");
+    pw.print("timeslot,cold");
+    for (double decay: decays) {
+      pw.print(",decay " + decay);
+    }
+    pw.println();
+    for (int t = 0; t < timeslots; t++) {
+      // the outputs change a little from one timeslot to the next
+      for (Producer prod: workSet) {
+        outputs.put(prod, outputs.get(prod)
+                          * (1 + (random.nextDouble() - 0.5) * 0.1));
+      }
+      OutputSnapshot snapshot = OutputSnapshot.of(outputs, report);
+      SortedEnergyConstraint enrgCon =
+        new SortedEnergyConstraint(workSet, limit, snapshot);
+      EnrgEmsMinFunction minFun =
+        new EnrgEmsMinFunction(limit, 16, 1, 1, snapshot, workSet);
+
+      // the cold run sets the quality the warm runs must reach
+      IndexedAntColonyOptimizationSS<Producer> cold =
+        new IndexedAntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun,
+                                                     1, 1, 0.1, 10, 0.1, 10);
+      cold.setMaxIterations(maxIterations);
+      cold.setSeed((long) t);
+      cold.execute();
+      double[] coldTrace = cold.getConvergenceTrace();
+      double target = coldTrace[coldTrace.length - 1] * 1.01;
+      coldIterations[t] = iterationsTo(coldTrace, target);
+      pw.print(t + "," + coldIterations[t]);
+
+      for (int d = 0; d < decays.length; d++) {
+        IndexedAntColonyOptimizationSS<Producer> warm =
+          new IndexedAntColonyOptimizationSS<Producer>(workSet, enrgCon,
+                                                       minFun, 1, 1, 0.1, 10,
+                                                       0.1, 10);
+        warm.setMaxIterations(maxIterations);
+        warm.setSeed((long) t);
+        warm.setPheromoneMemory(memories.get(d));
+        warm.execute();
+        warmIterations[d][t] =
+          iterationsTo(warm.getConvergenceTrace(), target);
+        pw.print("," + warmIterations[d][t]);
+      }
+      pw.println();
+    }
+    pw.close();
+
+    // the first timeslot is cold for all of them
+    System.out.println("cold mean iterations "
+                       + StatUtils.mean(coldIterations, 1, timeslots - 1));
+    for (int d = 0; d < decays.length; d++) {
+      System.out.println("decay " + decays[d] + " mean iterations "
+                         + StatUtils.mean(warmIterations[d], 1,
+                                          timeslots - 1));
+    }
+  }
 }
@@ -24,11 +24,15 @@ import org.mockito.internal.matchers.Equals;
 import org.mockito.internal.matchers.Not;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class AntColonyOptimizationSSTest
 {
@@ -85,6 +89,210 @@ public class AntColonyOptimizationSSTest
     assertTrue(bestSol.contains(5));
   }
 
+  @Test
+  public void testExecuteParallel ()
+  {
+    Random random = new Random(42);
+    final List<Integer> workItems = new ArrayList<Integer>();
+    for (int i = 0; i < 40; i++) {
+      workItems.add(1 + random.nextInt(20));
+    }
+    IntCond conint = new IntCond(100);
+    conint.setWorkingSet(workItems);
+    IntMin minfint = new IntMin(100);
+
+    AntColonyOptimizationSS<Integer> serial =
+      new AntColonyOptimizationSS<Integer>(workItems, conint, minfint, 1, 1,
+                                           0.1, 16, 0.01, 10);
+    serial.setSeed(7L);
+    List<Integer> expected = serial.execute();
+    assertTrue(IntCond.sum(expected) <= 100);
+
+    AntColonyOptimizationSS<Integer> parallel =
+      new AntColonyOptimizationSS<Integer>(workItems, conint, minfint, 1, 1,
+                                           0.1, 16, 0.01, 10);
+    parallel.setSeed(7L);
+    parallel.setParallel(3, new ConstraintsFactory<Integer>() {
+      @Override
+      public Constraints<Integer> createConstraints ()
+      {
+        IntCond cond = new IntCond(100);
+        cond.setWorkingSet(workItems);
+        return cond;
+      }
+    });
+    assertEquals(expected, parallel.execute());
+    assertEquals(serial.getPheromones(), parallel.getPheromones());
+
+    // the pool of the solver is kept between the runs
+    assertEquals(expected, parallel.execute());
+    parallel.shutdown();
+
+    // a given pool gives the same result and is left running
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      parallel.setExecutor(pool);
+      assertEquals(expected, parallel.execute());
+      parallel.shutdown();
+      assertFalse(pool.isShutdown());
+    }
+    finally {
+      pool.shutdown();
+    }
+
+    // a different seed gives different streams
+    assertTrue(AntColonyOptimizationSS.streamSeed(7, 0) != AntColonyOptimizationSS
+            .streamSeed(8, 0));
+  }
+
+  @Test
+  public void testExecuteIncremental ()
+  {
+    Random random = new Random(42);
+    List<Integer> workItems = new ArrayList<Integer>();
+    for (int i = 0; i < 40; i++) {
+      workItems.add(1 + random.nextInt(20));
+    }
+    IntCond conint = new IntCond(100);
+    conint.setWorkingSet(workItems);
+
+    AntColonyOptimizationSS<Integer> graded =
+      new AntColonyOptimizationSS<Integer>(workItems, conint, new IntMin(100),
+                                           1, 1, 0.1, 16, 0.01, 10);
+    graded.setSeed(7L);
+    List<Integer> expected = graded.execute();
+
+    IncrementalIntMin minfint = new IncrementalIntMin(100);
+    AntColonyOptimizationSS<Integer> incremental =
+      new AntColonyOptimizationSS<Integer>(workItems, conint, minfint, 1, 1,
+                                           0.1, 16, 0.01, 10);
+    incremental.setSeed(7L);
+    assertEquals(expected, incremental.execute());
+    assertEquals(graded.getPheromones(), incremental.getPheromones());
+    // the solutions carry their grade
+    assertEquals(0, minfint.solutionGrades);
+
+    IndexedAntColonyOptimizationSS<Integer> indexed =
+      new IndexedAntColonyOptimizationSS<Integer>(workItems, conint, minfint,
+                                                  1, 1, 0.1, 16, 0.01, 10);
+    indexed.setSeed(7L);
+    assertTrue(IntCond.sum(indexed.execute()) <= 100);
+    assertEquals(0, minfint.solutionGrades);
+  }
+
+  @Test
+  public void testPheromoneMemory ()
+  {
+    Random random = new Random(42);
+    List<Integer> workItems = new ArrayList<Integer>();
+    for (int i = 0; i < 40; i++) {
+      workItems.add(1 + random.nextInt(20));
+    }
+    IntCond conint = new IntCond(100);
+    conint.setWorkingSet(workItems);
+    IntMin minfint = new IntMin(100);
+    PheromoneMemory<Integer> memory = new PheromoneMemory<Integer>();
+
+    AntColonyOptimizationSS<Integer> ac =
+      new AntColonyOptimizationSS<Integer>(workItems, conint, minfint, 1, 1,
+                                           0.1, 8, 0.01, 10);
+    ac.setSeed(3L);
+    ac.setMaxIterations(5);
+    ac.setPheromoneMemory(memory);
+    ac.execute();
+    double[] firstTrace = ac.getConvergenceTrace();
+    Map<Integer, Double> pheromones =
+      new HashMap<Integer, Double>(ac.getPheromones());
+    assertEquals(1, memory.getRuns());
+
+    // the pheromones start from the memory
+    ac.initializePheromones();
+    assertEquals(pheromones, ac.getPheromones());
+
+    // the first ant follows the best solution of the first run
+    ac.setSeed(4L);
+    List<Integer> best = ac.execute();
+    assertTrue(ac.getConvergenceTrace()[0] <= firstTrace[4]);
+    assertEquals(2, memory.getRuns());
+    // and the run returns the best solution of all its iterations
+    assertEquals(ac.getConvergenceTrace()[4], minfint.gradeSolution(best),
+                 1e-12);
+
+    // the 6 doesn't fit after the 5 and the 3, the 2 does
+    List<Integer> small = Arrays.asList(2, 3, 6, 5);
+    IntCond smallCond = new IntCond(10);
+    smallCond.setWorkingSet(small);
+    AntColonyOptimizationSS<Integer> guided =
+      new AntColonyOptimizationSS<Integer>(small, smallCond, minfint, 1, 1,
+                                           0.1, 8, 0.01, 10);
+    guided.initializePheromones();
+    assertEquals(Arrays.asList(5, 3, 2),
+                 guided.constructSolution(new Random(1), smallCond, null,
+                                          Arrays.asList(5, 3, 6, 2)));
+  }
+
+  @Test
+  public void testStagnation ()
+  {
+    Random random = new Random(42);
+    List<Integer> workItems = new ArrayList<Integer>();
+    for (int i = 0; i < 40; i++) {
+      workItems.add(1 + random.nextInt(20));
+    }
+    IntCond conint = new IntCond(100);
+    conint.setWorkingSet(workItems);
+    IntMin minfint = new IntMin(100);
+
+    AntColonyOptimizationSS<Integer> ac =
+      new AntColonyOptimizationSS<Integer>(workItems, conint, minfint, 1, 1,
+                                           0.1, 8, 0.01, 10);
+    ac.setSeed(3L);
+    ac.setMaxIterations(1000);
+    ac.setStagnationLimit(4);
+    List<Integer> best = ac.execute();
+
+    int iterations = ac.getIterationsCompleted();
+    double[] trace = ac.getConvergenceTrace();
+    assertTrue(iterations >= 5 && iterations < 1000);
+    assertEquals(iterations, trace.length);
+    for (int i = 1; i < trace.length; i++)
+      assertTrue(trace[i] <= trace[i - 1]);
+    // the best grade didn't change for the last four iterations
+    assertEquals(trace[iterations - 5], trace[iterations - 1], 0);
+    assertTrue(iterations == 5
+               || trace[iterations - 6] > trace[iterations - 5]);
+    assertEquals(minfint.gradeSolution(best), trace[iterations - 1], 0);
+  }
+
+  @Test(timeout = 10000)
+  public void testTimeBudget ()
+  {
+    List<Integer> workItems = new ArrayList<Integer>();
+    workItems.add(2);
+    workItems.add(3);
+    workItems.add(6);
+    workItems.add(5);
+    IntCond conint = new IntCond(10);
+    conint.setWorkingSet(workItems);
+
+    AntColonyOptimizationSS<Integer> ac =
+      new AntColonyOptimizationSS<Integer>(workItems, conint, new IntMin(10),
+                                           1, 1, 0.1, 30, 0.01, 10);
+    ac.setMaxIterations(Integer.MAX_VALUE);
+    ac.setTimeBudget(20000000L);
+    List<Integer> best = ac.execute();
+    assertTrue(IntCond.sum(best) <= 10);
+    assertTrue(ac.getIterationsCompleted() >= 1);
+    assertEquals(ac.getIterationsCompleted(),
+                 ac.getConvergenceTrace().length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParallelWithoutFactory ()
+  {
+    aco.setParallel(2, null);
+  }
+
   @Test
   public void testUpdatePheromones ()
   {
@@ -399,4 +607,42 @@ public class AntColonyOptimizationSSTest
 
   }
 
+  static class IncrementalIntMin extends IntMin
+    implements IncrementalObjective<Integer>
+  {
+    int solutionGrades = 0;
+
+    public IncrementalIntMin (Integer limit)
+    {
+      super(limit);
+    }
+
+    @Override
+    public double gradeSolution (List<Integer> solution)
+    {
+      solutionGrades++;
+      return super.gradeSolution(solution);
+    }
+
+    @Override
+    public Accumulator<Integer> createAccumulator ()
+    {
+      return new Accumulator<Integer>() {
+        int sum = 0;
+
+        @Override
+        public void add (Integer item)
+        {
+          sum += item;
+        }
+
+        @Override
+        public double grade ()
+        {
+          return limit - sum + 0.1;
+        }
+      };
+    }
+  }
+
 }
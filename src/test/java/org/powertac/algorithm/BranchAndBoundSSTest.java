@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powertac.algorithm.AntColonyOptimizationSSTest.IntCond;
+import org.powertac.algorithm.GreedySSTest.TargetMin;
+import org.powertac.common.Competition;
+import org.powertac.common.WeatherReport;
+import org.powertac.producer.Producer;
+import org.powertac.producer.fossil.SteamPlant;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:test-config.xml" })
+@DirtiesContext
+public class BranchAndBoundSSTest
+{
+
+  @Test
+  public void testExecute ()
+  {
+    List<Integer> workSet = Arrays.asList(7, 4, 6, 5);
+    IntCond cond = new IntCond(13);
+    cond.setWorkingSet(workSet);
+    BranchAndBoundSS<Integer> bb =
+      new BranchAndBoundSS<Integer>(workSet, cond, new TargetMin(13));
+
+    // the greedy solution is 4 + 5
+    List<Integer> solution = bb.execute();
+    assertEquals(13, (int) IntCond.sum(solution));
+    assertEquals(0.1, bb.getBestGrade(), 1e-9);
+    assertTrue(bb.isOptimal());
+    // the subsets with a sum up to 13
+    assertEquals(10, bb.getNodesVisited());
+  }
+
+  @Test
+  public void testMaxNodes ()
+  {
+    List<Integer> workSet = Arrays.asList(7, 4, 6, 5);
+    IntCond cond = new IntCond(13);
+    cond.setWorkingSet(workSet);
+    BranchAndBoundSS<Integer> bb =
+      new BranchAndBoundSS<Integer>(workSet, cond, new TargetMin(13));
+    bb.setMaxNodes(2);
+
+    // the best of the greedy solution and the first subsets
+    List<Integer> solution = bb.execute();
+    assertFalse(bb.isOptimal());
+    assertEquals(2, bb.getNodesVisited());
+    assertEquals(Arrays.asList(4, 5), solution);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidMaxNodes ()
+  {
+    new BranchAndBoundSS<Integer>(null, null, null).setMaxNodes(0);
+  }
+
+  @Test
+  public void testProducersAskedOnce ()
+  {
+    Competition.newInstance("branch-and-bound-test");
+    WeatherReport report = new WeatherReport(0, 0, 0, 0, 0);
+    List<Producer> workSet = new ArrayList<Producer>();
+    for (int i = 0; i < 8; i++) {
+      workSet.add(spy(new SteamPlant(5000, 0.1, -1000 - 500 * i)));
+    }
+    EnergyConstraint cons = new EnergyConstraint(workSet, -8000, report);
+    // the larger subsets are better
+    ObjectiveMinFunction<Producer> fun = new ObjectiveMinFunction<Producer>() {
+      @Override
+      public double gradeItem (Producer item)
+      {
+        return 1;
+      }
+
+      @Override
+      public double gradeSolution (List<Producer> solution)
+      {
+        return -solution.size();
+      }
+    };
+
+    BranchAndBoundSS<Producer> bb =
+      new BranchAndBoundSS<Producer>(workSet, cons, fun);
+    bb.execute();
+    assertTrue(bb.isOptimal());
+    assertTrue(bb.getNodesVisited() > workSet.size());
+
+    // the search sees the same outputs at every subset
+    for (Producer prod: workSet) {
+      verify(prod, times(1)).getOutput(report);
+    }
+  }
+
+  @Test
+  public void testProducers ()
+  {
+    Competition.newInstance("branch-and-bound-test");
+    Random random = new Random(42);
+    List<Producer> workSet = new ArrayList<Producer>();
+    for (int i = 0; i < 12; i++) {
+      Producer prod =
+        new SteamPlant(5000, 0.1, -1000 - random.nextInt(9000));
+      prod.setCostPerKw(random.nextDouble());
+      workSet.add(prod);
+    }
+    OutputSnapshot snapshot =
+      OutputSnapshot.compute(workSet, new WeatherReport(0, 0, 0, 0, 0));
+    final EnrgEmsMinFunction fun =
+      new EnrgEmsMinFunction(-20000, 1, 1, 1, snapshot, workSet);
+    EnergyConstraint cons = new EnergyConstraint(workSet, -20000, snapshot);
+
+    // the same objective without the bound
+    ObjectiveMinFunction<Producer> unbounded =
+      new ObjectiveMinFunction<Producer>() {
+        @Override
+        public double gradeItem (Producer item)
+        {
+          return fun.gradeItem(item);
+        }
+
+        @Override
+        public double gradeSolution (List<Producer> solution)
+        {
+          return fun.gradeSolution(solution);
+        }
+      };
+
+    BranchAndBoundSS<Producer> bb =
+      new BranchAndBoundSS<Producer>(workSet, cons, fun);
+    BranchAndBoundSS<Producer> exhaustive =
+      new BranchAndBoundSS<Producer>(workSet, cons, unbounded);
+    List<Producer> solution = bb.execute();
+    exhaustive.execute();
+
+    assertTrue(bb.isOptimal());
+    assertTrue(exhaustive.isOptimal());
+    assertEquals(exhaustive.getBestGrade(), bb.getBestGrade(), 1e-12);
+    assertEquals(fun.gradeSolution(solution), bb.getBestGrade(), 0);
+    assertTrue(bb.getNodesVisited() < exhaustive.getNodesVisited());
+    double energy = 0;
+    for (Producer prod: solution) {
+      energy += snapshot.getOutput(prod);
+    }
+    assertTrue(energy >= -20000);
+
+    GreedySS<Producer> greedy = new GreedySS<Producer>(workSet, cons, fun);
+    greedy.execute();
+    assertTrue(bb.getBestGrade() <= greedy.getBestGrade() + 1e-12);
+
+    IndexedAntColonyOptimizationSS<Producer> aco =
+      new IndexedAntColonyOptimizationSS<Producer>(workSet, cons, fun, 1, 1,
+                                                   0.1, 10, 0.1, 10);
+    aco.setSeed(7L);
+    // the same set can be summed in another order
+    assertTrue(bb.getBestGrade() <= fun.gradeSolution(aco.execute()) + 1e-12);
+  }
+}
@@ -16,6 +16,7 @@
 package org.powertac.algorithm;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -68,4 +69,73 @@ public class EnrgEmsMinFunctionTest
 
   }
 
+  @Test
+  public void testAccumulator ()
+  {
+    Competition.newInstance("producer-test");
+    List<Producer> workSet = new ArrayList<Producer>();
+    for (int i = 1000; i < 10000; i += 1000) {
+      Producer prod = new SteamPlant(5000, 0.1, -i);
+      prod.setCostPerKw(i / 100000.0);
+      workSet.add(prod);
+    }
+    OutputSnapshot snapshot =
+      OutputSnapshot.compute(workSet, new WeatherReport(0, 0, 0, 0, 0));
+    EnrgEmsMinFunction fun =
+      new EnrgEmsMinFunction(-12000, 2, 1, 0.5, snapshot, workSet);
+
+    List<Producer> solution = new ArrayList<Producer>();
+    IncrementalObjective.Accumulator<Producer> accumulator =
+      fun.createAccumulator();
+    for (int i = 0; i < 9; i += 2) {
+      solution.add(workSet.get(i));
+      accumulator.add(workSet.get(i));
+      assertEquals(fun.gradeSolution(solution), accumulator.grade(), 0);
+    }
+
+    double sum = 0;
+    double energy = 0;
+    for (Producer prod: solution) {
+      sum += fun.gradeItem(prod) * snapshot.getOutput(prod);
+      energy += snapshot.getOutput(prod);
+    }
+    assertEquals((Math.abs(sum) + 0.5 * Math.abs(energy + 12000))
+                 / Math.abs(energy), accumulator.grade(), 1e-9);
+  }
+
+  @Test
+  public void testLowerBound ()
+  {
+    Competition.newInstance("producer-test");
+    List<Producer> workSet = new ArrayList<Producer>();
+    for (int i = 1000; i < 7000; i += 1000) {
+      Producer prod = new SteamPlant(5000, 0.1, -i);
+      prod.setCostPerKw((7000 - i) / 10000.0);
+      workSet.add(prod);
+    }
+    OutputSnapshot snapshot =
+      OutputSnapshot.compute(workSet, new WeatherReport(0, 0, 0, 0, 0));
+    EnrgEmsMinFunction fun =
+      new EnrgEmsMinFunction(-9000, 1, 1, 2, snapshot, workSet);
+
+    // the bound is below the grade of every extension of the solution
+    List<Producer> solution = workSet.subList(0, 1);
+    List<Producer> additions = workSet.subList(1, workSet.size());
+    double bound = fun.lowerBound(solution, additions);
+    assertTrue(bound > 0);
+    for (int mask = 0; mask < 1 << additions.size(); mask++) {
+      List<Producer> extension = new ArrayList<Producer>(solution);
+      for (int i = 0; i < additions.size(); i++) {
+        if ((mask & 1 << i) != 0)
+          extension.add(additions.get(i));
+      }
+      assertTrue(bound <= fun.gradeSolution(extension));
+    }
+
+    // no bound for a positive limit
+    EnrgEmsMinFunction positive =
+      new EnrgEmsMinFunction(9000, 1, 1, 2, snapshot, workSet);
+    assertEquals(0, positive.lowerBound(solution, additions), 0);
+  }
+
 }
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FenwickSamplerTest
+{
+
+  @Test
+  public void testSample ()
+  {
+    FenwickSampler sampler = new FenwickSampler(5);
+    sampler.put(0, 1);
+    sampler.put(2, 2);
+    sampler.put(3, 0);
+    sampler.put(4, 1);
+    sampler.build();
+    assertEquals(4, sampler.size());
+    assertEquals(4, sampler.total(), 1e-12);
+
+    assertEquals(0, sampler.sample(0));
+    assertEquals(0, sampler.sample(0.2));
+    assertEquals(2, sampler.sample(0.25));
+    assertEquals(2, sampler.sample(0.7));
+    assertEquals(4, sampler.sample(0.75));
+    assertEquals(4, sampler.sample(0.999));
+
+    sampler.remove(2);
+    sampler.remove(2);
+    assertEquals(3, sampler.size());
+    assertFalse(sampler.contains(2));
+    assertEquals(2, sampler.total(), 1e-12);
+    assertEquals(0, sampler.sample(0.4));
+    assertEquals(4, sampler.sample(0.6));
+
+    // only a candidate without weight is left
+    sampler.remove(0);
+    sampler.remove(4);
+    assertEquals(3, sampler.sample(0.5));
+    sampler.remove(3);
+    assertEquals(0, sampler.size());
+
+    sampler.clear();
+    sampler.put(1, 3);
+    sampler.build();
+    assertEquals(1, sampler.sample(0.5));
+  }
+
+  @Test
+  public void testSameAsScan ()
+  {
+    Random random = new Random(3);
+    int n = 37;
+    double[] weights = new double[n];
+    FenwickSampler sampler = new FenwickSampler(n);
+    for (int i = 0; i < n; i++) {
+      weights[i] = random.nextDouble();
+      sampler.put(i, weights[i]);
+    }
+    sampler.build();
+    for (int i = 0; i < n; i += 3) {
+      sampler.remove(i);
+      weights[i] = 0;
+    }
+
+    double total = 0;
+    for (double weight: weights)
+      total += weight;
+    assertEquals(total, sampler.total(), 1e-9);
+    for (int k = 0; k < 1000; k++) {
+      double u = random.nextDouble();
+      double target = u * total;
+      int expected = -1;
+      for (int i = 0; i < n; i++) {
+        if (weights[i] > 0 && target < weights[i]) {
+          expected = i;
+          break;
+        }
+        target -= weights[i];
+      }
+      assertEquals(expected, sampler.sample(u));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testEmpty ()
+  {
+    new FenwickSampler(3).sample(0.5);
+  }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.powertac.algorithm.AntColonyOptimizationSSTest.IntCond;
+
+public class GreedySSTest
+{
+
+  /*
+   * Prefers the small items and the sums close to the target
+   */
+  static class TargetMin implements ObjectiveMinFunction<Integer>
+  {
+    int target;
+
+    TargetMin (int target)
+    {
+      this.target = target;
+    }
+
+    @Override
+    public double gradeItem (Integer item)
+    {
+      return item;
+    }
+
+    @Override
+    public double gradeSolution (List<Integer> solution)
+    {
+      return Math.abs(IntCond.sum(solution) - target) + 0.1;
+    }
+  }
+
+  @Test
+  public void testExecute ()
+  {
+    List<Integer> workSet = Arrays.asList(4, 5, 6, 7);
+    IntCond cond = new IntCond(13);
+    cond.setWorkingSet(workSet);
+    GreedySS<Integer> greedy =
+      new GreedySS<Integer>(workSet, cond, new TargetMin(13));
+
+    // the cheap items leave no room for the others
+    assertEquals(Arrays.asList(4, 5), greedy.execute());
+    assertEquals(4.1, greedy.getBestGrade(), 1e-9);
+  }
+
+  @Test
+  public void testBestPrefix ()
+  {
+    List<Integer> workSet = Arrays.asList(4, 5, 2);
+    IntCond cond = new IntCond(13);
+    cond.setWorkingSet(workSet);
+    GreedySS<Integer> greedy =
+      new GreedySS<Integer>(workSet, cond, new TargetMin(7));
+
+    // adding the 5 moves the sum away from the target
+    assertEquals(Arrays.asList(2, 4), greedy.execute());
+    assertEquals(1.1, greedy.getBestGrade(), 1e-9);
+  }
+
+  @Test
+  public void testEmptyWorkSet ()
+  {
+    List<Integer> workSet = new ArrayList<Integer>();
+    IntCond cond = new IntCond(13);
+    cond.setWorkingSet(workSet);
+    GreedySS<Integer> greedy =
+      new GreedySS<Integer>(workSet, cond, new TargetMin(7));
+    assertTrue(greedy.execute().isEmpty());
+  }
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.powertac.algorithm.AntColonyOptimizationSSTest.IntCond;
+import org.powertac.algorithm.AntColonyOptimizationSSTest.IntMin;
+
+public class IndexedAntColonyOptimizationSSTest
+{
+
+  private List<Integer> workItems (int... values)
+  {
+    List<Integer> items = new ArrayList<Integer>();
+    for (int value: values) {
+      items.add(value);
+    }
+    return items;
+  }
+
+  @Test
+  public void testExecute ()
+  {
+    List<Integer> workItems = workItems(2, 3, 6, 5);
+    IntCond conint = new IntCond(10);
+    conint.setWorkingSet(workItems);
+
+    IndexedAntColonyOptimizationSS<Integer> ac =
+      new IndexedAntColonyOptimizationSS<Integer>(workItems, conint,
+                                                  new IntMin(10), 1, 1, 0.1,
+                                                  30, 0.01, 10);
+    List<Integer> bestSol = ac.execute();
+
+    assertTrue(bestSol.contains(2));
+    assertTrue(bestSol.contains(3));
+    assertTrue(bestSol.contains(5));
+  }
+
+  @Test
+  public void testIncremental ()
+  {
+    List<Integer> workItems = workItems(2, 3, 6, 5, 7, 8);
+    IncrementalIntCond conint = new IncrementalIntCond(10);
+    conint.setWorkingSet(workItems);
+
+    IndexedAntColonyOptimizationSS<Integer> ac =
+      new IndexedAntColonyOptimizationSS<Integer>(workItems, conint,
+                                                  new IntMin(10), 1, 1, 0.1,
+                                                  30, 0.01, 10);
+    ac.setSeed(5L);
+    List<Integer> bestSol = ac.execute();
+    assertEquals(10, IntCond.sum(bestSol).intValue());
+    assertTrue(conint.updates > 0);
+
+    Random random = new Random(42);
+    for (int i = 0; i < 100; i++) {
+      List<Integer> solution = ac.constructSolution(random);
+      assertTrue(IntCond.sum(solution) <= 10);
+      // no candidate is left that fits
+      for (Integer item: workItems) {
+        assertTrue(solution.contains(item)
+                   || item + IntCond.sum(solution) > 10);
+      }
+    }
+  }
+
+  @Test
+  public void testGradeItemOnce ()
+  {
+    List<Integer> workItems = workItems(2, 3, 6, 5, 3);
+    IntCond conint = new IntCond(10);
+    conint.setWorkingSet(workItems);
+    final int[] calls = new int[1];
+    IntMin minfint = new IntMin(10) {
+      @Override
+      public double gradeItem (Integer e)
+      {
+        calls[0]++;
+        return e;
+      }
+    };
+
+    IndexedAntColonyOptimizationSS<Integer> ac =
+      new IndexedAntColonyOptimizationSS<Integer>(workItems, conint, minfint,
+                                                  1, 2, 0.1, 10, 0.01, 10);
+    ac.execute();
+    // the two equal items share an index
+    assertEquals(4, calls[0]);
+    assertEquals(ac.indexOf(3), 1);
+    assertEquals(-1, ac.indexOf(7));
+  }
+
+  @Test
+  public void testUpdatePheromones ()
+  {
+    List<Integer> workItems = workItems(1, 2, 3, 4, 5, 6);
+    IndexedAntColonyOptimizationSS<Integer> ac =
+      new IndexedAntColonyOptimizationSS<Integer>(workItems, null,
+                                                  new IntMin(10), 1, 2, 0.1,
+                                                  4, 0.5, 1);
+    ac.initializeIndexes();
+    ac.initializePheromones();
+    ac.updatePheromones(workItems(1, 2, 3), 4);
+    ac.updatePheromones(workItems(1), 4);
+
+    double[] pheromones = ac.getPheromones();
+    assertEquals(1, pheromones[0], 1e-9);
+    assertEquals(0.9, pheromones[1], 1e-9);
+    assertEquals(0.9 * 0.9, pheromones[3], 1e-9);
+    assertEquals(0.9 * 0.9, pheromones[5], 1e-9);
+  }
+
+  @Test
+  public void testPheromoneMemory ()
+  {
+    Random random = new Random(42);
+    List<Integer> workItems = new ArrayList<Integer>();
+    for (int i = 0; i < 40; i++) {
+      workItems.add(1 + random.nextInt(20));
+    }
+    IntCond conint = new IntCond(100);
+    conint.setWorkingSet(workItems);
+    IntMin minfint = new IntMin(100);
+    PheromoneMemory<Integer> memory = new PheromoneMemory<Integer>();
+
+    IndexedAntColonyOptimizationSS<Integer> first =
+      new IndexedAntColonyOptimizationSS<Integer>(workItems, conint, minfint,
+                                                  1, 1, 0.1, 8, 0.01, 10);
+    first.setSeed(3L);
+    first.setMaxIterations(5);
+    first.setPheromoneMemory(memory);
+    first.execute();
+    double[] firstTrace = first.getConvergenceTrace();
+    assertEquals(1, memory.getRuns());
+    for (Integer item: workItems) {
+      assertEquals(first.getPheromones()[first.indexOf(item)],
+                   memory.recall(item, 0.01, 10), 0);
+    }
+
+    // the pheromones start from the memory
+    IndexedAntColonyOptimizationSS<Integer> second =
+      new IndexedAntColonyOptimizationSS<Integer>(workItems, conint, minfint,
+                                                  1, 1, 0.1, 8, 0.01, 10);
+    second.setSeed(4L);
+    second.setMaxIterations(5);
+    second.setPheromoneMemory(memory);
+    second.initializeIndexes();
+    second.initializePheromones();
+    assertArrayEquals(first.getPheromones(), second.getPheromones(), 0);
+
+    // the first ant follows the best solution of the first run
+    List<Integer> best = second.execute();
+    assertTrue(second.getConvergenceTrace()[0] <= firstTrace[4]);
+    assertEquals(2, memory.getRuns());
+    // and the run returns the best solution of all its iterations
+    assertEquals(second.getConvergenceTrace()[4], minfint.gradeSolution(best),
+                 1e-12);
+  }
+
+  @Test
+  public void testGuide ()
+  {
+    List<Integer> workItems = workItems(2, 3, 6, 5);
+    IntCond conint = new IntCond(10);
+    conint.setWorkingSet(workItems);
+    IndexedAntColonyOptimizationSS<Integer> ac =
+      new IndexedAntColonyOptimizationSS<Integer>(workItems, conint,
+                                                  new IntMin(10), 1, 1, 0.1,
+                                                  4, 0.01, 10);
+    ac.initializeIndexes();
+    ac.initializePheromones();
+    ac.updateWeights();
+
+    // the 6 doesn't fit after the 5 and the 3, the 2 does
+    List<Integer> solution =
+      ac.constructSolution(new Random(1), null, workItems(5, 3, 6, 2));
+    assertEquals(workItems(5, 3, 2), solution);
+  }
+
+  @Test(timeout = 10000)
+  public void testTimeBudget ()
+  {
+    List<Integer> workItems = workItems(2, 3, 6, 5);
+    IntCond conint = new IntCond(10);
+    conint.setWorkingSet(workItems);
+
+    IndexedAntColonyOptimizationSS<Integer> ac =
+      new IndexedAntColonyOptimizationSS<Integer>(workItems, conint,
+                                                  new IntMin(10), 1, 1, 0.1,
+                                                  30, 0.01, 10);
+    ac.setMaxIterations(Integer.MAX_VALUE);
+    ac.setTimeBudget(20000000L);
+    assertTrue(IntCond.sum(ac.execute()) <= 10);
+    assertTrue(ac.getIterationsCompleted() >= 1);
+  }
+
+  @Test
+  public void testStagnation ()
+  {
+    List<Integer> workItems = workItems(2, 3, 6, 5);
+    IntCond conint = new IntCond(10);
+    conint.setWorkingSet(workItems);
+
+    IndexedAntColonyOptimizationSS<Integer> ac =
+      new IndexedAntColonyOptimizationSS<Integer>(workItems, conint,
+                                                  new IntMin(10), 1, 1, 0.1,
+                                                  30, 0.01, 10);
+    ac.setSeed(1L);
+    ac.setMaxIterations(1000);
+    ac.setStagnationLimit(3);
+    List<Integer> best = ac.execute();
+    assertEquals(10, IntCond.sum(best).intValue());
+
+    // the optimum is found in the first iterations
+    double[] trace = ac.getConvergenceTrace();
+    assertTrue(ac.getIterationsCompleted() < 10);
+    assertEquals(ac.getIterationsCompleted(), trace.length);
+    assertEquals(0.1, trace[trace.length - 1], 1e-9);
+  }
+
+  @Test
+  public void testSeed ()
+  {
+    Random random = new Random(42);
+    List<Integer> workItems = new ArrayList<Integer>();
+    for (int i = 0; i < 40; i++) {
+      workItems.add(1 + random.nextInt(20));
+    }
+    IntCond conint = new IntCond(100);
+    conint.setWorkingSet(workItems);
+
+    List<List<Integer>> results = new ArrayList<List<Integer>>();
+    for (int run = 0; run < 2; run++) {
+      IndexedAntColonyOptimizationSS<Integer> ac =
+        new IndexedAntColonyOptimizationSS<Integer>(workItems, conint,
+                                                    new IntMin(100), 1, 1,
+                                                    0.1, 16, 0.01, 10);
+      ac.setSeed(7L);
+      results.add(ac.execute());
+    }
+    assertEquals(results.get(0), results.get(1));
+    assertTrue(IntCond.sum(results.get(0)) <= 100);
+  }
+
+  static class IncrementalIntCond extends IntCond
+    implements IncrementalConstraints<Integer>
+  {
+    int updates = 0;
+
+    public IncrementalIntCond (int upperLimit)
+    {
+      super(upperLimit);
+    }
+
+    @Override
+    public void updateCandidates (List<Integer> solution, Integer chosen,
+                                  List<Integer> removed)
+    {
+      updates++;
+      int solSum = sum(solution);
+      for (Integer item: workSet) {
+        if (item + solSum > upperLimit)
+          removed.add(item);
+      }
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powertac.common.Competition;
+import org.powertac.common.WeatherReport;
+import org.powertac.producer.Producer;
+import org.powertac.producer.fossil.SteamPlant;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:test-config.xml" })
+@DirtiesContext
+public class OutputSnapshotTest
+{
+  List<Producer> workSet;
+  WeatherReport report = new WeatherReport(0, 0, 0, 0, 0);
+
+  @Before
+  public void setUp ()
+  {
+    Competition.newInstance("producer-test");
+    workSet = new ArrayList<Producer>();
+    for (int i = 0; i < 12; i++) {
+      Producer prod = spy(new SteamPlant(5000, 0.1, -1000 - 500 * (i % 4)));
+      prod.setCostPerKw(0.01 * (i + 1));
+      workSet.add(prod);
+    }
+  }
+
+  @Test
+  public void testCompute ()
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    OutputSnapshot snapshot;
+    try {
+      snapshot = OutputSnapshot.compute(workSet, report, executor);
+    }
+    finally {
+      executor.shutdown();
+    }
+    assertEquals(12, snapshot.size());
+    assertSame(report, snapshot.getReport());
+    for (Producer prod: workSet) {
+      assertTrue(snapshot.contains(prod));
+      assertTrue(snapshot.getOutput(prod) < 0);
+      verify(prod, times(1)).getOutput(report);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingProducer ()
+  {
+    OutputSnapshot snapshot =
+      OutputSnapshot.compute(workSet.subList(0, 2), report);
+    snapshot.getOutput(workSet.get(3));
+  }
+
+  @Test
+  public void testSharedByTheAlgorithm ()
+  {
+    OutputSnapshot snapshot = OutputSnapshot.compute(workSet, report);
+    EnergyConstraint enrgCon = new EnergyConstraint(workSet, -6000, snapshot);
+    EnrgEmsMinFunction minFun =
+      new EnrgEmsMinFunction(-6000, 1, 1, 1, snapshot, workSet);
+
+    AntColonyOptimizationSS<Producer> serial =
+      new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
+                                            0.1, 8, 0.1, 10);
+    serial.setSeed(11L);
+    List<Producer> expected = serial.execute();
+
+    AntColonyOptimizationSS<Producer> parallel =
+      new AntColonyOptimizationSS<Producer>(workSet, enrgCon, minFun, 1, 1,
+                                            0.1, 8, 0.1, 10);
+    parallel.setSeed(11L);
+    parallel.setParallel(2, EnergyConstraint.factory(workSet, -6000, snapshot));
+    assertEquals(expected, parallel.execute());
+    parallel.shutdown();
+
+    double power = 0;
+    for (Producer prod: expected) {
+      power += snapshot.getOutput(prod);
+    }
+    assertTrue(Math.abs(power) <= 6000);
+
+    // the producers were asked once, by the snapshot
+    for (Producer prod: workSet) {
+      verify(prod, times(1)).getOutput(report);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PheromoneMemoryTest
+{
+
+  @Test
+  public void testRecall ()
+  {
+    PheromoneMemory<String> memory = new PheromoneMemory<String>();
+    assertTrue(memory.isEmpty());
+    // the unknown items start at the maximum
+    assertEquals(10, memory.recall("a", 1, 10), 0);
+
+    memory.store("a", 4);
+    memory.store("b", 0.5);
+    memory.storeBestSolution(Arrays.asList("a"));
+    assertFalse(memory.isEmpty());
+    assertEquals(2, memory.size());
+    assertEquals(1, memory.getRuns());
+    assertTrue(memory.contains("a"));
+    assertFalse(memory.contains("c"));
+    assertEquals(4, memory.recall("a", 1, 10), 0);
+    // the pheromones are kept within the limits of the run
+    assertEquals(1, memory.recall("b", 1, 10), 0);
+    assertEquals(3, memory.recall("a", 1, 3), 0);
+
+    memory.setDecay(0.5);
+    assertEquals(7, memory.recall("a", 1, 10), 0);
+    memory.setDecay(1);
+    assertEquals(10, memory.recall("a", 1, 10), 0);
+
+    memory.clear();
+    assertTrue(memory.isEmpty());
+    assertEquals(0, memory.size());
+    assertEquals(10, memory.recall("a", 1, 10), 0);
+  }
+
+  @Test
+  public void testKey ()
+  {
+    // the strings are remembered by their length
+    PheromoneMemory<String> memory =
+      new PheromoneMemory<String>(new PheromoneMemory.Key<String>() {
+        @Override
+        public Object keyOf (String item)
+        {
+          return item.length();
+        }
+      }, 0.25);
+    assertEquals(0.25, memory.getDecay(), 0);
+    memory.store("aaa", 2);
+    memory.storeBestSolution(Arrays.asList("aaa", "b", "cc"));
+
+    assertEquals(4, memory.recall("xyz", 0, 10), 0);
+    // the items of the working set in the order of the best solution
+    List<String> best =
+      memory.recallBestSolution(Arrays.asList("zz", "y", "long one", "xyz"));
+    assertEquals(Arrays.asList("xyz", "y", "zz"), best);
+    assertTrue(new PheromoneMemory<String>()
+            .recallBestSolution(Arrays.asList("a")).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidDecay ()
+  {
+    new PheromoneMemory<String>().setDecay(1.5);
+  }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SolverSelectorTest
+{
+
+  private List<Integer> workSet (int size)
+  {
+    List<Integer> result = new ArrayList<Integer>();
+    for (int i = 0; i < size; i++) {
+      result.add(i);
+    }
+    return result;
+  }
+
+  @Test
+  public void testSelect ()
+  {
+    AntColonyOptimizationSSTest.IntCond cond =
+      new AntColonyOptimizationSSTest.IntCond(10);
+    GreedySSTest.TargetMin min = new GreedySSTest.TargetMin(10);
+
+    assertTrue(SolverSelector.select(workSet(SolverSelector.EXACT_LIMIT),
+                                     cond, min) instanceof BranchAndBoundSS);
+    assertTrue(SolverSelector.select(workSet(SolverSelector.EXACT_LIMIT + 1),
+                                     cond, min)
+               instanceof SolverSelector.BestOf);
+    SolverSelector.BestOf<Integer> medium =
+      (SolverSelector.BestOf<Integer>) SolverSelector
+              .select(workSet(SolverSelector.ACO_LIMIT), cond, min);
+    assertTrue(medium.getFirst() instanceof GreedySS);
+    assertTrue(medium.getSecond() instanceof IndexedAntColonyOptimizationSS);
+    assertTrue(SolverSelector.select(workSet(SolverSelector.ACO_LIMIT + 1),
+                                     cond, min) instanceof GreedySS);
+    assertTrue(SolverSelector.select(workSet(3), cond, min, 2, 3)
+               instanceof SolverSelector.BestOf);
+  }
+
+  @Test
+  public void testDistinctItems ()
+  {
+    // the repeated items are counted once
+    List<Integer> items = new LinkedList<Integer>(Arrays.asList(1, 2, 2, 3));
+    assertTrue(SolverSelector.select(items, null, null, 3, 3)
+               instanceof BranchAndBoundSS);
+    assertTrue(SolverSelector.select(items, null, null, 2, 3)
+               instanceof SolverSelector.BestOf);
+  }
+
+  @Test
+  public void testBestOf ()
+  {
+    List<Integer> workSet = Arrays.asList(4, 5, 6, 7);
+    AntColonyOptimizationSSTest.IntCond cond =
+      new AntColonyOptimizationSSTest.IntCond(13);
+    cond.setWorkingSet(workSet);
+    GreedySSTest.TargetMin min = new GreedySSTest.TargetMin(13);
+
+    // the exact solution is better than the greedy one in either order
+    SubsetSelection<Integer> greedy =
+      new GreedySS<Integer>(workSet, cond, min);
+    SubsetSelection<Integer> exact =
+      new BranchAndBoundSS<Integer>(workSet, cond, min);
+    assertEquals(0.1, min.gradeSolution(new SolverSelector.BestOf<Integer>(
+            min, greedy, exact).execute()), 1e-9);
+    assertEquals(0.1, min.gradeSolution(new SolverSelector.BestOf<Integer>(
+            min, exact, greedy).execute()), 1e-9);
+  }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.algorithm;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powertac.common.Competition;
+import org.powertac.common.WeatherReport;
+import org.powertac.producer.Producer;
+import org.powertac.producer.fossil.SteamPlant;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:test-config.xml" })
+@DirtiesContext
+public class SortedEnergyConstraintTest
+{
+  List<Producer> workSet;
+  WeatherReport report = new WeatherReport(0, 0, 0, 0, 0);
+
+  @Before
+  public void setUp ()
+  {
+    Competition.newInstance("producer-test");
+    workSet = new ArrayList<Producer>();
+    for (int i = 999; i < 10000; i += 1000) {
+      workSet.add(spy(new SteamPlant(5000, 0.1, -i)));
+    }
+  }
+
+  @Test
+  public void testInitializeCandidates ()
+  {
+    List<Producer> solution = new ArrayList<Producer>();
+    solution.add(workSet.get(0));
+
+    SortedEnergyConstraint enrgcon =
+      new SortedEnergyConstraint(workSet, -5000, report);
+    List<Producer> candidates = enrgcon.initializeCandidates(solution);
+    assertEquals(3, candidates.size());
+    // sorted by decreasing power
+    assertSame(workSet.get(3), candidates.get(0));
+    assertSame(workSet.get(1), candidates.get(2));
+  }
+
+  @Test
+  public void testUpdateCandidates ()
+  {
+    List<Producer> solution = new ArrayList<Producer>();
+    solution.add(workSet.get(0));
+
+    SortedEnergyConstraint enrgcon =
+      new SortedEnergyConstraint(workSet, -6000, report);
+    List<Producer> candidates = enrgcon.initializeCandidates(solution);
+    assertEquals(4, candidates.size());
+
+    solution.add(workSet.get(2));
+    candidates = enrgcon.updateCandidates(solution, candidates);
+    assertEquals(1, candidates.size());
+    assertSame(workSet.get(1), candidates.get(0));
+  }
+
+  @Test
+  public void testIncrementalUpdate ()
+  {
+    SortedEnergyConstraint enrgcon =
+      new SortedEnergyConstraint(workSet, -6000, report);
+    for (int run = 0; run < 3; run++) {
+      List<Producer> solution = new ArrayList<Producer>();
+      solution.add(workSet.get(0));
+      assertEquals(4, enrgcon.initializeCandidates(solution).size());
+
+      List<Producer> removed = new ArrayList<Producer>();
+      solution.add(workSet.get(2));
+      enrgcon.updateCandidates(solution, workSet.get(2), removed);
+      // the producers of 5999 and more were dropped by the initialization,
+      // the chosen one is reported too
+      assertEquals(3, removed.size());
+      assertSame(workSet.get(4), removed.get(0));
+      assertSame(workSet.get(2), removed.get(2));
+
+      removed.clear();
+      solution.add(workSet.get(1));
+      enrgcon.updateCandidates(solution, workSet.get(1), removed);
+      assertEquals(2, removed.size());
+    }
+
+    // the power is asked once for all the runs
+    for (Producer prod: workSet) {
+      verify(prod, times(1)).getOutput(report);
+    }
+  }
+
+  @Test
+  public void testSameAsEnergyConstraint ()
+  {
+    EnergyConstraint expected = new EnergyConstraint(workSet, -20000, report);
+    SortedEnergyConstraint enrgcon =
+      new SortedEnergyConstraint(workSet, -20000, report);
+
+    List<Producer> solution = new ArrayList<Producer>();
+    solution.add(workSet.get(5));
+    List<Producer> expectedCandidates = expected.initializeCandidates(solution);
+    List<Producer> candidates = enrgcon.initializeCandidates(solution);
+    int[] choices = { 1, 3, 0 };
+    for (int choice: choices) {
+      assertEquals(expectedCandidates.size(), candidates.size());
+      assertTrue(candidates.containsAll(expectedCandidates));
+      solution.add(workSet.get(choice));
+      expectedCandidates =
+        expected.updateCandidates(solution, expectedCandidates);
+      candidates = enrgcon.updateCandidates(solution, candidates);
+    }
+    assertEquals(expectedCandidates.size(), candidates.size());
+    assertTrue(candidates.containsAll(expectedCandidates));
+  }
+}
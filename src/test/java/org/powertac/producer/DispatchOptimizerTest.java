@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powertac.common.Competition;
+import org.powertac.producer.fossil.SteamPlant;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:test-config.xml" })
+@DirtiesContext
+public class DispatchOptimizerTest
+{
+  List<Producer> producers;
+
+  @Before
+  public void setUp ()
+  {
+    Competition.newInstance("dispatch-test");
+    producers = new ArrayList<Producer>();
+    addProducers(10, 0, 0.03, -5000);
+    addProducers(10, 1.5, 0.1, -4000);
+    addProducers(10, 0, 0.14, -2000);
+    // a producer that produced nothing is never selected
+    addProducers(1, 0, 0.01, 0);
+  }
+
+  private void addProducers (int count, double co2em, double cost,
+                             double output)
+  {
+    for (int i = 0; i < count; i++) {
+      Producer prod = new SteamPlant(5000, 0.001, -5000);
+      prod.setCo2Emissions(co2em);
+      prod.setCostPerKw(cost);
+      prod.lastOutput = output;
+      producers.add(prod);
+    }
+  }
+
+  @Test
+  public void testOptimize ()
+  {
+    DispatchOptimizer optimizer = new DispatchOptimizer();
+    DispatchOptimizer.Result result = optimizer.optimize(producers, -50001);
+    assertSame(result, optimizer.getLastResult());
+
+    assertFalse(result.getSelection().isEmpty());
+    assertFalse(result.getSelection().contains(producers.get(30)));
+    double energy = 0;
+    for (Producer prod: result.getSelection())
+      energy += prod.getLastOutput();
+    assertEquals(energy, result.getEnergy(), 1e-9);
+    assertTrue(result.getEnergy() < 0);
+    assertEquals(-50001, result.getTarget(), 0);
+    assertTrue(result.getGrade() > 0);
+    assertEquals(Math.abs(energy + 50001) / 50001, result.getTargetGap(),
+                 1e-12);
+    assertTrue(result.getSolveNanos() > 0);
+    assertTrue(result.getIterations() >= 1);
+
+    optimizer.optimize(producers, -30001);
+    assertEquals(2, optimizer.getSolveTimes().getCount());
+    assertTrue(optimizer.getMeanTargetGap() >= 0);
+    assertTrue(optimizer.toString().startsWith("dispatch n=2"));
+
+    optimizer.clear();
+    assertNull(optimizer.getLastResult());
+    assertEquals(0, optimizer.getSolveTimes().getCount());
+  }
+
+  @Test
+  public void testWarmStart ()
+  {
+    DispatchOptimizer optimizer = new DispatchOptimizer();
+    assertEquals(0.05, optimizer.getPheromoneDecay(), 0);
+    optimizer.setPheromoneDecay(0.1);
+    DispatchOptimizer.Result first = optimizer.optimize(producers, -50001);
+    assertEquals(1, optimizer.getPheromoneMemory().getRuns());
+    assertTrue(optimizer.getPheromoneMemory().contains(producers.get(0)));
+    assertFalse(optimizer.getPheromoneMemory().contains(producers.get(30)));
+
+    // the first ant follows the previous selection
+    DispatchOptimizer.Result second = optimizer.optimize(producers, -50001);
+    assertTrue(second.getGrade() <= first.getGrade() + 1e-12);
+    assertEquals(2, optimizer.getPheromoneMemory().getRuns());
+
+    optimizer.clear();
+    assertTrue(optimizer.getPheromoneMemory().isEmpty());
+    assertEquals(0.1, optimizer.getPheromoneDecay(), 0);
+
+    // without the warm start nothing is remembered
+    optimizer.setWarmStart(false);
+    optimizer.optimize(producers, -50001);
+    assertTrue(optimizer.getPheromoneMemory().isEmpty());
+  }
+
+  @Test
+  public void testNothingToDispatch ()
+  {
+    DispatchOptimizer optimizer = new DispatchOptimizer();
+    DispatchOptimizer.Result result =
+      optimizer.optimize(producers.subList(30, 31), -1000);
+    assertTrue(result.getSelection().isEmpty());
+    assertEquals(1, result.getTargetGap(), 0);
+    assertEquals(0, result.getIterations());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPositiveTarget ()
+  {
+    new DispatchOptimizer().optimize(producers, 1000);
+  }
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powertac.common.Competition;
+import org.powertac.producer.fossil.SteamPlant;
+import org.powertac.producer.pvfarm.SolarFarm;
+import org.powertac.producer.utils.CurveRegistry;
+import org.powertac.producer.windfarm.WindFarm;
+import org.powertac.producer.windfarm.WindTurbine;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:test-config.xml" })
+@DirtiesContext
+public class FarmStreamLoaderTest
+{
+  File file;
+
+  @Before
+  public void setUp () throws IOException
+  {
+    Competition.newInstance("Farm stream loader test");
+    CurveRegistry.clear();
+    file = File.createTempFile("wind-farm", ".xml");
+  }
+
+  @After
+  public void tearDown ()
+  {
+    file.delete();
+  }
+
+  private String turbine (double ratedOutput)
+  {
+    return "<turbine><latitude>22.0</latitude>"
+           + "<surfaceRoughness>0.01</surfaceRoughness>"
+           + "<ratedOutput>" + ratedOutput + "</ratedOutput>"
+           + "<hubHeigth>80.0</hubHeigth>"
+           + "<powerCurve last-value=\"0.0\"><entry x=\"3.0\">0.0</entry>"
+           + "<entry x=\"10.0\">-1000.0</entry>"
+           + "<entry x=\"25.0\">-2000.0</entry></powerCurve></turbine>";
+  }
+
+  @Test
+  public void testLoadFarm () throws Exception
+  {
+    FileWriter writer = new FileWriter(file);
+    writer.write("<wind-farm upperPowerCap=\"-8000.0\">" + turbine(-2000)
+                 + turbine(-3000) + "<turbine reference=\"../turbine[2]\"/>"
+                 + "<turbine reference=\"../turbine\"/></wind-farm>");
+    writer.close();
+
+    FarmStreamLoader loader = new FarmStreamLoader();
+    WindFarm farm = (WindFarm) loader.load(file.toURI().toURL());
+    List<WindTurbine> turbines = farm.getTurbineList();
+    assertEquals(4, turbines.size());
+    assertEquals(-8000, farm.getUpperPowerCap(), 0);
+    assertNotNull(farm.getCustomerInfo());
+
+    // the references point to the same turbines
+    assertNotSame(turbines.get(0), turbines.get(1));
+    assertSame(turbines.get(1), turbines.get(2));
+    assertSame(turbines.get(0), turbines.get(3));
+    assertEquals(-3000, turbines.get(1).getRatedOutput(), 0);
+    assertNotNull(turbines.get(1).getRs());
+
+    // the identical power curves are shared
+    assertSame(turbines.get(0).getPowerCurve(), turbines.get(1)
+            .getPowerCurve());
+    assertEquals(2, CurveRegistry.getTotalCount());
+    assertEquals(1, CurveRegistry.getUniqueCount());
+    assertEquals(-1000, turbines.get(0).getPowerCurve().value(10), 1e-9);
+    assertTrue(loader.getPeakHeap() > 0);
+  }
+
+  @Test
+  public void testLoadEmptyFarm () throws Exception
+  {
+    FileWriter writer = new FileWriter(file);
+    writer.write("<wind-farm upperPowerCap=\"0.0\"/>");
+    writer.close();
+
+    WindFarm farm =
+      (WindFarm) new FarmStreamLoader().load(file.toURI().toURL());
+    assertEquals(0, farm.getTurbineList().size());
+  }
+
+  @Test
+  public void testLoadSameAsXStream () throws Exception
+  {
+    String[] names = { "/conf/solar-farm.xml", "/conf/wind-farm.xml",
+                      "/conf/steam-plant.xml" };
+    FarmStreamLoader loader = new FarmStreamLoader();
+    for (String name: names) {
+      Producer expected =
+        (Producer) ProducerService.getXStream()
+                .fromXML(FarmStreamLoaderTest.class.getResource(name));
+      Producer producer =
+        loader.load(FarmStreamLoaderTest.class.getResource(name));
+      assertEquals(expected.getClass(), producer.getClass());
+      assertEquals(expected.getUpperPowerCap(), producer.getUpperPowerCap(),
+                   0);
+      assertEquals(expected.getCostPerKw(), producer.getCostPerKw(), 0);
+    }
+    assertEquals(13,
+                 ((WindFarm) loader.load(FarmStreamLoaderTest.class
+                         .getResource("/conf/wind-farm.xml")))
+                         .getTurbineList().size());
+    assertTrue(loader.load(FarmStreamLoaderTest.class
+            .getResource("/conf/steam-plant.xml")) instanceof SteamPlant);
+    assertTrue(loader.load(FarmStreamLoaderTest.class
+            .getResource("/conf/solar-farm.xml")) instanceof SolarFarm);
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidReference () throws Exception
+  {
+    FileWriter writer = new FileWriter(file);
+    writer.write("<wind-farm upperPowerCap=\"0.0\">"
+                 + "<turbine reference=\"../turbine\"/></wind-farm>");
+    writer.close();
+    new FarmStreamLoader().load(file.toURI().toURL());
+  }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.powertac.common.WeatherForecast;
+import org.powertac.common.WeatherForecastPrediction;
+
+public class ForecastWindowTest
+{
+
+  @Before
+  public void setUp ()
+  {
+    ForecastWindow.clear();
+  }
+
+  private WeatherForecast forecast (int... times)
+  {
+    List<WeatherForecastPrediction> predictions =
+      new ArrayList<WeatherForecastPrediction>();
+    for (int time: times)
+      predictions.add(new WeatherForecastPrediction(time, time, 0, 0, 0));
+    return new WeatherForecast(10, predictions);
+  }
+
+  @Test
+  public void testRepeatFill ()
+  {
+    ForecastWindow window = ForecastWindow.of(forecast(1, 2, 3), 7);
+    assertEquals(7, window.size());
+    for (int i = 0; i < 7; i++) {
+      assertEquals(11 + i, window.getTimeslot(i));
+      assertEquals(1 + i % 3, window.getPrediction(i).getForecastTime());
+    }
+  }
+
+  @Test
+  public void testShortProfile ()
+  {
+    ForecastWindow window = ForecastWindow.of(forecast(1, 2, 3), 2);
+    assertEquals(2, window.size());
+    assertEquals(12, window.getTimeslot(1));
+  }
+
+  @Test
+  public void testUnsorted ()
+  {
+    // same as the old sorted map: in order of the slots, later ones win
+    ForecastWindow window = ForecastWindow.of(forecast(3, 1, 1), 4);
+    assertEquals(4, window.size());
+    int[] slots = { 11, 13, 14, 16 };
+    int[] times = { 1, 3, 1, 3 };
+    for (int i = 0; i < slots.length; i++) {
+      assertEquals(slots[i], window.getTimeslot(i));
+      assertEquals(times[i], window.getPrediction(i).getForecastTime());
+    }
+  }
+
+  @Test
+  public void testEmpty ()
+  {
+    assertEquals(0, ForecastWindow.of(forecast(), 24).size());
+  }
+
+  @Test
+  public void testShared ()
+  {
+    WeatherForecast forecast = forecast(1, 2);
+    ForecastWindow window = ForecastWindow.of(forecast, 24);
+    assertSame(window, ForecastWindow.of(forecast, 24));
+    assertNotSame(window, ForecastWindow.of(forecast, 12));
+    assertNotSame(window, ForecastWindow.of(forecast(1, 2), 24));
+  }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+import org.powertac.producer.ProducerMetrics.Histogram;
+import org.powertac.producer.ProducerMetrics.Operation;
+
+public class ProducerMetricsTest
+{
+
+  @After
+  public void tearDown ()
+  {
+    ProducerMetrics.setEnabled(false);
+  }
+
+  @Test
+  public void testHistogram ()
+  {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.getPercentile(0.5));
+    for (int i = 0; i < 99; i++)
+      histogram.record(1000);
+    histogram.record(1000000);
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(1000000, histogram.getMax());
+    assertEquals((99 * 1000 + 1000000) / 100.0, histogram.getMean(), 1e-9);
+    // 1000 falls in the bucket [512, 1024)
+    assertEquals(1024, histogram.getPercentile(0.5));
+    assertEquals(1024, histogram.getPercentile(0.99));
+    assertEquals(1000000, histogram.getPercentile(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPercentile ()
+  {
+    new Histogram().getPercentile(2);
+  }
+
+  @Test
+  public void testDisabled ()
+  {
+    ProducerMetrics metrics = new ProducerMetrics();
+    long start = metrics.begin();
+    assertEquals(0, start);
+    metrics.end(Operation.STEP, start);
+    metrics.addOutputCalls(10);
+    assertEquals(0, metrics.getCount(Operation.STEP));
+    assertEquals(0, metrics.getOutputCalls());
+  }
+
+  @Test
+  public void testMerge ()
+  {
+    ProducerMetrics.setEnabled(true);
+    ProducerMetrics a = new ProducerMetrics();
+    ProducerMetrics b = new ProducerMetrics();
+    a.end(Operation.STEP, a.begin());
+    b.end(Operation.STEP, b.begin());
+    b.end(Operation.GENERATE_OUTPUT, b.begin());
+    b.addOutputCalls(24);
+
+    a.merge(b);
+    assertEquals(2, a.getCount(Operation.STEP));
+    assertEquals(1, a.getCount(Operation.GENERATE_OUTPUT));
+    assertEquals(24, a.getOutputCalls());
+    assertTrue(a.toString().contains("getOutput calls=24"));
+
+    a.reset();
+    assertEquals(0, a.getCount(Operation.STEP));
+    assertEquals(0, a.getOutputCalls());
+  }
+}
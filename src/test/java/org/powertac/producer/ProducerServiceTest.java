@@ -20,8 +20,12 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.MapConfiguration;
@@ -37,10 +41,13 @@ import org.powertac.common.Competition;
 import org.powertac.common.CustomerInfo;
 import org.powertac.common.Rate;
 import org.powertac.common.Tariff;
+import org.powertac.common.TariffEvaluator;
 import org.powertac.common.TariffSpecification;
 import org.powertac.common.TariffSubscription;
 import org.powertac.common.TariffTransaction;
 import org.powertac.common.TimeService;
+import org.powertac.common.WeatherForecast;
+import org.powertac.common.WeatherForecastPrediction;
 import org.powertac.common.config.Configurator;
 import org.powertac.common.enumerations.PowerType;
 import org.powertac.common.interfaces.Accounting;
@@ -54,6 +61,13 @@ import org.powertac.common.repo.TariffSubscriptionRepo;
 import org.powertac.common.repo.TimeslotRepo;
 import org.powertac.common.repo.WeatherForecastRepo;
 import org.powertac.common.repo.WeatherReportRepo;
+import org.powertac.producer.fossil.SteamPlant;
+import org.powertac.producer.hydro.Dam;
+import org.powertac.producer.hydro.RunOfRiver;
+import org.powertac.producer.Producer.PreferredOutput;
+import org.powertac.producer.pvfarm.PvPanel;
+import org.powertac.producer.pvfarm.SolarFarm;
+import org.powertac.producer.windfarm.WindFarm;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
@@ -281,6 +295,169 @@ public class ProducerServiceTest
             .thenReturn(l);
   }
 
+  @Test
+  public void testLoadProducers () throws Exception
+  {
+    assertTrue(ProducerService.getXStream() == ProducerService.getXStream());
+
+    List<Producer> producers = producerService.loadProducers();
+    assertEquals(5, producers.size());
+    // the parallel parsing keeps the order of the files
+    assertTrue(producers.get(0) instanceof Dam);
+    assertTrue(producers.get(1) instanceof RunOfRiver);
+    assertTrue(producers.get(2) instanceof SolarFarm);
+    assertTrue(producers.get(3) instanceof SteamPlant);
+    assertTrue(producers.get(4) instanceof WindFarm);
+  }
+
+  @Test
+  public void testLoadProducersStreaming () throws Exception
+  {
+    List<Producer> parsed = producerService.loadProducers();
+    producerService.setStreamingThreshold(0);
+    try {
+      List<Producer> streamed = producerService.loadProducers();
+      assertEquals(parsed.size(), streamed.size());
+      for (int i = 0; i < parsed.size(); i++) {
+        assertEquals(parsed.get(i).getClass(), streamed.get(i).getClass());
+        assertEquals(parsed.get(i).getUpperPowerCap(), streamed.get(i)
+                .getUpperPowerCap(), 0);
+      }
+    }
+    finally {
+      producerService.setStreamingThreshold(1024);
+    }
+  }
+
+  @Test
+  public void testMetrics ()
+  {
+    List<Producer> l = new ArrayList<Producer>();
+    l.add(new SteamPlant(10000, 2000, -500000));
+    l.add(new SteamPlant(10000, 2000, -500000));
+    producerService.setProducerList(l);
+
+    // nothing is recorded while the metrics are disabled
+    producerService.activate(null, 0);
+    assertEquals(0, producerService.getMetricsByType().get("SteamPlant")
+            .getCount(ProducerMetrics.Operation.STEP));
+
+    producerService.setMetricsEnabled(true);
+    try {
+      producerService.activate(null, 0);
+      producerService.activate(null, 0);
+      ProducerMetrics metrics =
+        producerService.getMetricsByType().get("SteamPlant");
+      assertEquals(4, metrics.getCount(ProducerMetrics.Operation.STEP));
+      assertEquals(4,
+                   metrics.getCount(ProducerMetrics.Operation.CONSUME_POWER));
+      assertEquals(2, l.get(0).getMetrics()
+              .getCount(ProducerMetrics.Operation.STEP));
+      assertTrue(metrics.getHistogram(ProducerMetrics.Operation.STEP)
+              .getTotalNanos() > 0);
+
+      producerService.resetMetrics();
+      assertEquals(0, producerService.getMetricsByType().get("SteamPlant")
+              .getCount(ProducerMetrics.Operation.STEP));
+    }
+    finally {
+      producerService.setMetricsEnabled(false);
+    }
+  }
+
+  @Test
+  public void testPrecompute () throws InterruptedException
+  {
+    SolarFarm farm = new SolarFarm();
+    farm.addPanel(new PvPanel(10, 22, 22, 180, 45, 0.35, -2));
+    List<Producer> l = new ArrayList<Producer>();
+    l.add(farm);
+    producerService.setProducerList(l);
+
+    List<WeatherForecastPrediction> predictions =
+      new ArrayList<WeatherForecastPrediction>();
+    for (int i = 1; i <= 24; i++)
+      predictions.add(new WeatherForecastPrediction(i, 22, 5, 0.5,
+                                                    (i % 4) / 4.0));
+    weatherForecastRepo.add(new WeatherForecast(timeslotRepo
+            .currentSerialNumber(), predictions));
+
+    ProducerMetrics.setEnabled(true);
+    try {
+      producerService.precompute();
+      for (int i = 0; i < 1000 && !farm.producerAccessor.isPrecomputeDone(); i++)
+        Thread.sleep(10);
+      assertTrue(farm.producerAccessor.isPrecomputeDone());
+      PreferredOutput precomputed =
+        farm.producerAccessor.generateOutputs(Arrays.asList(defaultTariff),
+                                              24).get(0);
+      assertEquals(1, farm.getMetrics().getPrecomputedProfiles());
+
+      // computed synchronously without a precomputation
+      PreferredOutput computed =
+        farm.producerAccessor.generateOutputs(Arrays.asList(defaultTariff),
+                                              24).get(0);
+      assertEquals(1, farm.getMetrics().getPrecomputedProfiles());
+      assertEquals(computed.preferredOutput, precomputed.preferredOutput, 0);
+      assertArrayEquals(computed.output, precomputed.output, 0);
+
+      // a cancelled precomputation isn't used
+      producerService.precompute();
+      producerService.cancelPrecompute();
+      farm.producerAccessor.generateOutputs(Arrays.asList(defaultTariff), 24);
+      assertEquals(1, farm.getMetrics().getPrecomputedProfiles());
+    }
+    finally {
+      ProducerMetrics.setEnabled(false);
+    }
+  }
+
+  @Test
+  public void testEvaluateWaitsForPrecompute () throws Exception
+  {
+    SolarFarm farm = new SolarFarm();
+    farm.addPanel(new PvPanel(10, 22, 22, 180, 45, 0.35, -2));
+    List<WeatherForecastPrediction> predictions =
+      new ArrayList<WeatherForecastPrediction>();
+    for (int i = 1; i <= 24; i++)
+      predictions.add(new WeatherForecastPrediction(i, 22, 5, 0.5, 0.5));
+    weatherForecastRepo.add(new WeatherForecast(timeslotRepo
+            .currentSerialNumber(), predictions));
+
+    // a round that needs no new profiles never asks for the outputs
+    final boolean[] precomputeDone = new boolean[1];
+    final Producer.ProducerAccessor accessor = farm.producerAccessor;
+    TariffEvaluator evaluator = mock(TariffEvaluator.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer (InvocationOnMock invocation)
+      {
+        precomputeDone[0] = accessor.isPrecomputeDone();
+        return null;
+      }
+    }).when(evaluator).evaluateTariffs();
+    farm.setTariffEvaluator(evaluator);
+
+    // the precomputation starts after the evaluation is called
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(new Callable<Void>() {
+        @Override
+        public Void call () throws InterruptedException
+        {
+          Thread.sleep(200);
+          return null;
+        }
+      });
+      accessor.precompute(executor);
+      farm.evaluateNewTariffs();
+      assertTrue(precomputeDone[0]);
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
   @Test
   public void testPublishNewTariffs ()
   {
@@ -292,4 +469,30 @@ public class ProducerServiceTest
     verify(prod).evaluateNewTariffs();
   }
 
+  @Test
+  public void testPublishUnrelatedTariffs ()
+  {
+    SteamPlant plant = spy(new SteamPlant(10000, 2000, -500000));
+    doNothing().when(plant).evaluateNewTariffs();
+    List<Producer> l = new ArrayList<Producer>();
+    l.add(plant);
+    producerService.setProducerList(l);
+
+    Tariff consumption =
+      new Tariff(new TariffSpecification(broker1, PowerType.CONSUMPTION)
+              .addRate(new Rate().withValue(-0.5)));
+    Tariff wind =
+      new Tariff(new TariffSpecification(broker1, PowerType.WIND_PRODUCTION)
+              .addRate(new Rate().withValue(0.5)));
+    Tariff production =
+      new Tariff(new TariffSpecification(broker1, PowerType.PRODUCTION)
+              .addRate(new Rate().withValue(0.5)));
+
+    producerService.publishNewTariffs(Arrays.asList(consumption, wind));
+    verify(plant, never()).evaluateNewTariffs();
+
+    producerService.publishNewTariffs(Arrays.asList(consumption, production));
+    verify(plant).evaluateNewTariffs();
+  }
+
 }
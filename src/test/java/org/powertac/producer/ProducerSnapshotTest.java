@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powertac.common.Competition;
+import org.powertac.producer.windfarm.WindFarm;
+import org.powertac.producer.windfarm.WindTurbine;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:test-config.xml" })
+@DirtiesContext
+public class ProducerSnapshotTest
+{
+  File folder;
+  File snapshot;
+
+  @Before
+  public void setUp () throws Exception
+  {
+    Competition.newInstance("Producer snapshot test");
+    folder = new File(ProducerSnapshotTest.class.getResource("/conf").toURI());
+    snapshot = File.createTempFile("producers", ".snapshot");
+  }
+
+  @After
+  public void tearDown ()
+  {
+    snapshot.delete();
+  }
+
+  @Test
+  public void testRoundTrip () throws Exception
+  {
+    List<File> files = ProducerService.listProducerFiles(folder);
+    ProducerSnapshot.write(files, snapshot);
+
+    List<Producer> expected = new ArrayList<Producer>();
+    for (File file: files) {
+      expected.add((Producer) ProducerService.getXStream().fromXML(file));
+    }
+    List<Producer> producers = ProducerSnapshot.read(snapshot);
+
+    assertEquals(expected.size(), producers.size());
+    for (int i = 0; i < producers.size(); i++) {
+      assertEquals(expected.get(i).getClass(), producers.get(i).getClass());
+      assertEquals(expected.get(i).getUpperPowerCap(), producers.get(i)
+              .getUpperPowerCap(), 0);
+      assertEquals(expected.get(i).getCostPerKw(), producers.get(i)
+              .getCostPerKw(), 0);
+      assertNotNull(producers.get(i).getCustomerInfo());
+    }
+
+    // the curves come from the curve table
+    for (int i = 0; i < producers.size(); i++) {
+      if (producers.get(i) instanceof WindFarm) {
+        WindTurbine a =
+          ((WindFarm) expected.get(i)).getTurbineList().get(0);
+        WindTurbine b =
+          ((WindFarm) producers.get(i)).getTurbineList().get(0);
+        for (double speed = 0; speed < 30; speed += 0.5) {
+          assertEquals(a.getPowerCurve().value(speed), b.getPowerCurve()
+                  .value(speed), 0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testListCascadeFiles () throws Exception
+  {
+    File dir = File.createTempFile("producers", "");
+    dir.delete();
+    dir.mkdir();
+    File cascade = new File(dir, "cascade.xml");
+    File other = new File(dir, "notes.xml");
+    try {
+      cascade.createNewFile();
+      other.createNewFile();
+      List<File> files = ProducerService.listProducerFiles(dir);
+      assertEquals(1, files.size());
+      assertEquals(cascade, files.get(0));
+    }
+    finally {
+      cascade.delete();
+      other.delete();
+      dir.delete();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testBadMagic () throws Exception
+  {
+    FileOutputStream out = new FileOutputStream(snapshot);
+    out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+    out.close();
+    ProducerSnapshot.read(snapshot);
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncated () throws Exception
+  {
+    ProducerSnapshot.write(ProducerService.listProducerFiles(folder),
+                           snapshot);
+    RandomAccessFile file = new RandomAccessFile(snapshot, "rw");
+    file.setLength(file.length() / 2);
+    file.close();
+    ProducerSnapshot.read(snapshot);
+  }
+}
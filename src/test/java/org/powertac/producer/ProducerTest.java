@@ -20,6 +20,7 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.TreeMap;
 
@@ -61,6 +62,8 @@ import org.powertac.producer.Producer.PreferredOutput;
 import org.powertac.producer.Producer.ProducerAccessor;
 import org.powertac.producer.fossil.SteamPlant;
 import org.powertac.producer.hydro.RunOfRiver;
+import org.powertac.producer.pvfarm.PvPanel;
+import org.powertac.producer.pvfarm.SolarFarm;
 import org.powertac.producer.utils.Curve;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.annotation.DirtiesContext;
@@ -498,6 +501,119 @@ public class ProducerTest
 
   }
 
+  private void addForecast ()
+  {
+    List<WeatherForecastPrediction> predictions =
+      new ArrayList<WeatherForecastPrediction>();
+    for (int i = 1; i <= 24; i++)
+      predictions.add(new WeatherForecastPrediction(i, 22, 5, 0.5,
+                                                    (i % 4) / 4.0));
+    weatherForecastRepo.add(new WeatherForecast(timeslotRepo
+            .currentSerialNumber(), predictions));
+  }
+
+  @Test
+  public void testGenerateOutputsBatch ()
+  {
+    SolarFarm farm = new SolarFarm();
+    farm.addPanel(new PvPanel(10, 22, 22, 180, 45, 0.35, -2));
+    addForecast();
+
+    TariffSpecification spec =
+      new TariffSpecification(broker1, PowerType.PRODUCTION)
+              .withExpiration(exp)
+              .addRate(new Rate().withDailyBegin(8).withDailyEnd(17)
+                               .withValue(0.8))
+              .addRate(new Rate().withDailyBegin(18).withDailyEnd(7)
+                               .withValue(0.01));
+    Tariff tou = new Tariff(spec);
+    assertTrue(tou.init());
+
+    PreferredOutput single1 =
+      farm.producerAccessor.generateOutput(defaultTariff, 24);
+    PreferredOutput single2 = farm.producerAccessor.generateOutput(tou, 24);
+
+    ProducerMetrics.setEnabled(true);
+    try {
+      List<PreferredOutput> batch =
+        farm.producerAccessor.generateOutputs(Arrays.asList(defaultTariff,
+                                                            tou), 24);
+      assertEquals(2, batch.size());
+      assertArrayEquals(single1.output, batch.get(0).output, 0);
+      assertEquals(single1.preferredOutput, batch.get(0).preferredOutput, 0);
+      assertArrayEquals(single2.output, batch.get(1).output, 0);
+      assertEquals(single2.preferredOutput, batch.get(1).preferredOutput, 0);
+
+      // one pass over the 11 set-points and the 24 hours
+      assertEquals(1, farm.getMetrics().getProfileCacheHits());
+      assertEquals(11 * 24, farm.getMetrics().getOutputCalls());
+
+      // the steam plant output is computed for every tariff
+      SteamPlant plant = new SteamPlant(10000, 2000, -500000);
+      plant.producerAccessor.generateOutputs(Arrays.asList(defaultTariff,
+                                                           tou), 24);
+      assertEquals(0, plant.getMetrics().getProfileCacheHits());
+      assertEquals(2 * 11 * 24, plant.getMetrics().getOutputCalls());
+    }
+    finally {
+      ProducerMetrics.setEnabled(false);
+    }
+  }
+
+  @Test
+  public void testPruningSameAsExhaustive ()
+  {
+    addForecast();
+
+    List<Tariff> tariffs = new ArrayList<Tariff>();
+    tariffs.add(defaultTariff);
+    tariffs.add(new Tariff(new TariffSpecification(broker1,
+                                                   PowerType.PRODUCTION)
+            .withExpiration(exp)
+            .addRate(new Rate().withDailyBegin(8).withDailyEnd(17)
+                             .withValue(0.8))
+            .addRate(new Rate().withDailyBegin(18).withDailyEnd(7)
+                             .withValue(0.01))));
+    // not worth producing, all the set-points pay the same
+    tariffs.add(new Tariff(new TariffSpecification(broker1,
+                                                   PowerType.PRODUCTION)
+            .withExpiration(exp).addRate(new Rate().withValue(0.00001))));
+    tariffs.add(new Tariff(new TariffSpecification(broker1,
+                                                   PowerType.PRODUCTION)
+            .withExpiration(exp).withPeriodicPayment(2)
+            .addRate(new Rate().withValue(0.3))));
+    for (Tariff tariff: tariffs)
+      assertTrue(tariff.init());
+
+    // the shipped producers whose outputs are computed once per batch
+    String[] names = { "/conf/solar-farm.xml", "/conf/wind-farm.xml" };
+    ProducerMetrics.setEnabled(true);
+    try {
+      for (String name: names) {
+        Producer producer =
+          (Producer) ProducerService.getXStream()
+                  .fromXML(ProducerTest.class.getResource(name));
+        ProducerAccessor accessor = producer.producerAccessor;
+        accessor.beginBatch();
+        for (Tariff tariff: tariffs) {
+          ProducerAccessor.setPruningEnabled(false);
+          PreferredOutput exhaustive = accessor.generateOutput(tariff, 24);
+          ProducerAccessor.setPruningEnabled(true);
+          PreferredOutput pruned = accessor.generateOutput(tariff, 24);
+          assertEquals(name, exhaustive.preferredOutput,
+                       pruned.preferredOutput, 0);
+          assertArrayEquals(name, exhaustive.output, pruned.output, 0);
+        }
+        accessor.endBatch();
+        assertTrue(name, producer.getMetrics().getPrunedSetPoints() > 0);
+      }
+    }
+    finally {
+      ProducerAccessor.setPruningEnabled(false);
+      ProducerMetrics.setEnabled(false);
+    }
+  }
+
   @Test
   public void testProducePower ()
   {
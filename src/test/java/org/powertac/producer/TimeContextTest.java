@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer;
+
+import static org.junit.Assert.*;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+public class TimeContextTest
+{
+
+  @Test
+  public void testConversions ()
+  {
+    Instant instant =
+      new DateTime(2014, 3, 2, 13, 0, 0, 0, DateTimeZone.UTC).toInstant();
+    TimeContext time = new TimeContext(7, instant);
+    assertEquals(7, time.getTimeslotIndex());
+    assertSame(instant, time.getInstant());
+    assertEquals(instant.getMillis(), time.getMillis());
+    assertEquals(instant.getZone().toTimeZone(), time.getTimezone());
+    assertEquals(instant.toDateTime().getDayOfYear(), time.getDayOfYear());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoInstant ()
+  {
+    new TimeContext(7, null);
+  }
+}
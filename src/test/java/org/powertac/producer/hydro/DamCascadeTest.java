@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.hydro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powertac.common.Competition;
+import org.powertac.producer.utils.Curve;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.thoughtworks.xstream.XStream;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { "classpath:test-config.xml" })
+@DirtiesContext
+public class DamCascadeTest
+{
+  Curve efficiency;
+  Curve flow;
+  Curve volume;
+
+  @Before
+  public void setUp ()
+  {
+    Competition.newInstance("Dam cascade test");
+
+    efficiency = new Curve();
+    efficiency.add(0, 0.5);
+    efficiency.add(0.5, 1);
+    efficiency.add(1, 0.5);
+
+    flow = new Curve();
+    flow.add(1, 9);
+    flow.add(182, 9);
+    flow.add(365, 9);
+
+    volume = new Curve();
+    volume.add(0, 0);
+    volume.add(1000000, 16.5);
+    volume.add(3000000, 28);
+    volume.add(4000000, 31);
+    volume.add(6000000, 36);
+    volume.add(8000000, 39.5);
+  }
+
+  @Test
+  public void testSingleReservoirMatchesDam ()
+  {
+    Dam dam = new Dam(flow, 1, 9, efficiency, volume, 6000000, -3500, 1);
+    DamCascade cascade = new DamCascade(flow);
+    cascade.addReservoir(new Reservoir(1, 9, efficiency, volume, 6000000,
+                                       -3500, 1));
+    assertEquals(-3500, cascade.getUpperPowerCap(), 0);
+
+    double preferred = -4.5 * 999.972 * 9.80665 * 1 * 36 / 1000;
+    dam.setPreferredOutput(preferred);
+    cascade.setPreferredOutput(preferred);
+
+    for (int day = 5; day < 10; day++) {
+      assertEquals(dam.getOutput(day), cascade.getOutput(day), 1e-6);
+      assertEquals(dam.getVolume(), cascade.getVolume(0), 1e-6);
+      assertEquals(dam.getHeight(), cascade.getHeight(0), 1e-6);
+    }
+  }
+
+  @Test
+  public void testOutflowFeedsNextReservoir ()
+  {
+    DamCascade cascade = new DamCascade(flow);
+    cascade.addReservoir(new Reservoir(1, 9, efficiency, volume, 6000000,
+                                       -3500, 1));
+    cascade.addReservoir(new Reservoir(1, 9, efficiency, volume, 6000000,
+                                       -3500, 1));
+    cascade.setPreferredOutput(-4.5 * 999.972 * 9.80665 * 1 * 36 / 1000);
+
+    for (int day = 5; day < 8; day++) {
+      cascade.getOutput(day);
+    }
+    // The upstream reservoir releases less than the river flow so the
+    // downstream one receives less water and drains faster
+    assertTrue(cascade.getVolume(0) > 6000000);
+    assertTrue(cascade.getVolume(1) < cascade.getVolume(0));
+  }
+
+  @Test
+  public void testForecastKeepsState ()
+  {
+    DamCascade cascade = new DamCascade(flow);
+    cascade.addReservoir(new Reservoir(1, 9, efficiency, volume, 6000000,
+                                       -3500, 1));
+    cascade.addReservoir(new Reservoir(1, 9, efficiency, volume, 5000000,
+                                       -3500, 1));
+    cascade.setPreferredOutput(-3000);
+
+    int[] days = new int[24];
+    for (int i = 0; i < days.length; i++)
+      days[i] = 100;
+    double[] first = cascade.forecast(days);
+    double[] second = cascade.forecast(days);
+
+    assertEquals(24, first.length);
+    assertArrayEquals(first, second, 0);
+    assertEquals(6000000, cascade.getVolume(0), 0);
+    assertEquals(5000000, cascade.getVolume(1), 0);
+
+    // stepping the real state gives the first forecasted value
+    assertEquals(first[0], cascade.getOutput(100), 1e-9);
+  }
+
+  @Test
+  public void testForecastNotReusable ()
+  {
+    // the forecast state moves with every set-point, like in the other
+    // hydro plants
+    assertFalse(new DamCascade(flow).isForecastReusable());
+  }
+
+  @Test
+  public void testSerialize ()
+  {
+    DamCascade cascade = new DamCascade(flow);
+    cascade.addReservoir(new Reservoir(1, 9, efficiency, volume, 6000000,
+                                       -3500, 1));
+    cascade.addReservoir(new Reservoir(1, 9, efficiency, volume, 5000000,
+                                       -2000, 1));
+    XStream xstream = new XStream();
+    xstream.autodetectAnnotations(true);
+    String out = xstream.toXML(cascade);
+    xstream.processAnnotations(DamCascade.class);
+    xstream.processAnnotations(Reservoir.class);
+    DamCascade c = (DamCascade) xstream.fromXML(out);
+    assertEquals(2, c.getReservoirs().size());
+    assertEquals(-5500, c.getUpperPowerCap(), 0);
+    assertEquals(5000000, c.getVolume(1), 0);
+    assertNotNull(c.getCustomerInfo());
+  }
+
+  @Test
+  public void testSerializeWithoutReservoirs ()
+  {
+    XStream xstream = new XStream();
+    xstream.autodetectAnnotations(true);
+    String out = xstream.toXML(new DamCascade(flow));
+    xstream.processAnnotations(DamCascade.class);
+    DamCascade c = (DamCascade) xstream.fromXML(out);
+    assertTrue(c.getReservoirs().isEmpty());
+    assertNotNull(c.getCustomerInfo());
+  }
+}
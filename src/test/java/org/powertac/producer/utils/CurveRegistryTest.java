@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2014 Spyros Papageorgiou
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package org.powertac.producer.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.thoughtworks.xstream.XStream;
+
+public class CurveRegistryTest
+{
+
+  @Before
+  public void setUp ()
+  {
+    CurveRegistry.clear();
+  }
+
+  private Curve curve (double last)
+  {
+    Curve c = new Curve();
+    c.add(1, 5);
+    c.add(2, 10);
+    c.add(3, last);
+    return c;
+  }
+
+  @Test
+  public void testIntern ()
+  {
+    Curve a = CurveRegistry.intern(curve(25));
+    assertSame(a, CurveRegistry.intern(curve(25)));
+    assertNotSame(a, CurveRegistry.intern(curve(20)));
+
+    Curve custom = curve(25);
+    custom.setCustomLastValue(0);
+    assertNotSame(a, CurveRegistry.intern(custom));
+
+    Curve positive = curve(25);
+    positive.setCanBeNegative(false);
+    assertNotSame(a, CurveRegistry.intern(positive));
+
+    assertEquals(5, CurveRegistry.getTotalCount());
+    assertEquals(4, CurveRegistry.getUniqueCount());
+    assertEquals(10, a.value(2), 0);
+  }
+
+  @Test
+  public void testConverterShares ()
+  {
+    XStream xstream = new XStream();
+    xstream.processAnnotations(Curve.class);
+    String xml = xstream.toXML(curve(25));
+
+    Curve a = (Curve) xstream.fromXML(xml);
+    Curve b = (Curve) xstream.fromXML(xml);
+    assertSame(a, b);
+    assertEquals(2, CurveRegistry.getTotalCount());
+    assertEquals(1, CurveRegistry.getUniqueCount());
+
+    CurveRegistry.clear();
+    assertNotSame(a, xstream.fromXML(xml));
+  }
+}
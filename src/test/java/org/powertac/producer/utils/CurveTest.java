@@ -17,6 +17,14 @@ package org.powertac.producer.utils;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Test;
 import org.powertac.producer.utils.Curve;
 
@@ -113,4 +121,38 @@ public class CurveTest
     assertTrue(c.getFirstX() == 1);
     assertTrue(c.getLastX() == 5);
   }
+
+  @Test
+  public void testConcurrentFirstValue () throws Exception
+  {
+    double expected =
+      new Curve(new double[] { 1, 2, 3, 4, 5 },
+                new double[] { 5, 10, 25, 20, 5 }).value(2.5);
+    // an interned curve is shared by producers computed on many threads
+    for (int round = 0; round < 20; round++) {
+      final Curve c = new Curve(new double[] { 1, 2, 3, 4, 5 },
+                                new double[] { 5, 10, 25, 20, 5 });
+      final CountDownLatch start = new CountDownLatch(1);
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+        List<Future<Double>> values = new ArrayList<Future<Double>>();
+        for (int i = 0; i < 4; i++) {
+          values.add(executor.submit(new Callable<Double>() {
+            @Override
+            public Double call () throws Exception
+            {
+              start.await();
+              return c.value(2.5);
+            }
+          }));
+        }
+        start.countDown();
+        for (Future<Double> value: values)
+          assertEquals(expected, value.get(), 0);
+      }
+      finally {
+        executor.shutdown();
+      }
+    }
+  }
 }